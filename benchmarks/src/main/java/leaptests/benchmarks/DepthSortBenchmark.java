@@ -0,0 +1,83 @@
+package leaptests.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.Random;
+import leaptests.DepthSorter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Depth ordering of the stars, when the stars move a bit between frames
+// and when the order changes completely
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DepthSortBenchmark {
+	@Param({ "10", "1000", "100000" })
+	public int starCount;
+
+	@Param({ "orbiting", "shuffled" })
+	public String motion;
+
+	// Number of precomputed frames with the star depths
+	private static final int N_FRAMES = 32;
+
+	private DepthSorter sorter;
+	private float[][] frames;
+	private int frame;
+	private int direction;
+
+	@Setup
+	public void setUp() {
+		sorter = new DepthSorter();
+		frames = new float[N_FRAMES][starCount];
+		Random random = new Random(1);
+
+		if (motion.equals("orbiting")) {
+			// The stars move a small fraction of their orbits between
+			// consecutive frames
+			for (int i = 0; i < starCount; i++) {
+				float radius = 20 + 280 * random.nextFloat();
+				float phase = (float) (2 * Math.PI * random.nextFloat());
+
+				for (int f = 0; f < N_FRAMES; f++) {
+					frames[f][i] = radius
+							* (float) Math.sin(phase + 0.5f * f / radius);
+				}
+			}
+		} else if (motion.equals("shuffled")) {
+			for (int f = 0; f < N_FRAMES; f++) {
+				for (int i = 0; i < starCount; i++) {
+					frames[f][i] = 600 * random.nextFloat() - 300;
+				}
+			}
+		} else {
+			throw new IllegalArgumentException("Unknown motion " + motion);
+		}
+
+		frame = 0;
+		direction = 1;
+	}
+
+	@Benchmark
+	public Object sort() {
+		// Go through the frames back and forth, so the depths never jump
+		if (frame + direction < 0 || frame + direction >= N_FRAMES) {
+			direction = -direction;
+		}
+
+		frame += direction;
+		return sorter.sort(frames[frame], frames[frame].length);
+	}
+}
@@ -0,0 +1,28 @@
+package leaptests.benchmarks;
+
+import leaptests.View;
+
+// Constant orientation and zoom, instead of the ones controlled by the hand
+public class FixedView implements View {
+	private float xAng;
+	private float yAng;
+	private float zoom;
+
+	public FixedView(float xAng, float yAng, float zoom) {
+		this.xAng = xAng;
+		this.yAng = yAng;
+		this.zoom = zoom;
+	}
+
+	public float getXAng() {
+		return xAng;
+	}
+
+	public float getYAng() {
+		return yAng;
+	}
+
+	public float getZoom() {
+		return zoom;
+	}
+}
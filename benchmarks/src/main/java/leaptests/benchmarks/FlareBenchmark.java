@@ -0,0 +1,98 @@
+package leaptests.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import leaptests.FlareGenerator;
+import leaptests.NoiseSource;
+import processing.core.PConstants;
+import processing.core.PImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Update of one star flares image. The image side is six times the radius.
+// The reference method is the per-pixel color() version that FlareGenerator
+// replaced. Before measuring the generator, the set up checks that both give
+// the same images
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlareBenchmark {
+	// Number of frames compared with the reference
+	private static final int CHECK_FRAMES = 1000;
+
+	@Param({ "5", "10", "20" })
+	public int radius;
+
+	@Param({ "generator", "reference" })
+	public String method;
+
+	private FlareGenerator flares;
+	private ReferenceFlares reference;
+	private int[] grey;
+	private PImage flaresImg;
+	private float noiseSeed;
+
+	@Setup
+	public void setUp() {
+		int side = 6 * radius;
+		NoiseSource noise = new ValueNoise(1);
+
+		if (method.equals("generator")) {
+			flares = FlareGenerator.get(noise, side, side, radius);
+			check(new ReferenceFlares(noise, side, side, radius));
+			grey = flares.createBuffer();
+			flaresImg = new PImage(side, side, PConstants.ARGB);
+		} else if (method.equals("reference")) {
+			reference = new ReferenceFlares(noise, side, side, radius);
+		} else {
+			throw new IllegalArgumentException("Unknown method " + method);
+		}
+
+		noiseSeed = 0;
+	}
+
+	private void check(ReferenceFlares expected) {
+		int[] checkGrey = flares.createBuffer();
+		PImage img = new PImage(6 * radius, 6 * radius, PConstants.ARGB);
+		float seed = 0;
+
+		for (int frame = 0; frame < CHECK_FRAMES; frame++) {
+			seed += 0.1;
+			flares.update(checkGrey, seed, img);
+			int[] expectedPixels = expected.update(seed).pixels;
+
+			for (int i = 0; i < expectedPixels.length; i++) {
+				if (img.pixels[i] != expectedPixels[i]) {
+					throw new IllegalStateException("Frame " + frame
+							+ ", pixel " + i + ": "
+							+ Integer.toHexString(img.pixels[i])
+							+ " instead of "
+							+ Integer.toHexString(expectedPixels[i]));
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public Object update() {
+		noiseSeed += 0.1;
+
+		if (reference != null) {
+			return reference.update(noiseSeed);
+		}
+
+		flares.update(grey, noiseSeed, flaresImg);
+		return flaresImg;
+	}
+}
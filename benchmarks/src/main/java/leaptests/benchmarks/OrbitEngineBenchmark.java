@@ -0,0 +1,60 @@
+package leaptests.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import leaptests.KeplerIntegrator;
+import leaptests.OrbitBenchmark;
+import leaptests.OrbitEngine;
+import leaptests.SymplecticIntegrator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// One frame of the orbit engine, 50 steps of 3 hours for every star
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrbitEngineBenchmark {
+	@Param({ "10", "1000", "100000" })
+	public int starCount;
+
+	@Param({ "verlet", "adaptive", "kepler" })
+	public String integrator;
+
+	private OrbitEngine orbits;
+
+	@Setup
+	public void setUp() {
+		orbits = new OrbitEngine(starCount, OrbitBenchmark.BH_MASS);
+
+		if (integrator.equals("verlet")) {
+			orbits.setIntegrator(SymplecticIntegrator.verlet());
+		} else if (integrator.equals("adaptive")) {
+			orbits.setIntegrator(SymplecticIntegrator.yoshida().adaptive(0.02f,
+					1000));
+		} else if (integrator.equals("kepler")) {
+			orbits.setIntegrator(new KeplerIntegrator(starCount));
+		} else {
+			throw new IllegalArgumentException("Unknown integrator "
+					+ integrator);
+		}
+
+		OrbitBenchmark.addRandomStars(orbits, starCount, 1);
+	}
+
+	@Benchmark
+	public Object update() {
+		orbits.update(3 * 3600, 50);
+		return orbits;
+	}
+}
@@ -0,0 +1,94 @@
+package leaptests.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import leaptests.BlackHole;
+import leaptests.OrbitBenchmark;
+import leaptests.OrbitEngine;
+import leaptests.ScreenProjector;
+import leaptests.View;
+import processing.core.PMatrix3D;
+import processing.core.PVector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Screen positions of all the stars, with the cached view matrix and with
+// the old per-star matrix stack, which is kept as a reference
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProjectionBenchmark {
+	@Param({ "10", "1000", "100000" })
+	public int starCount;
+
+	@Param({ "projector", "matrixStack" })
+	public String method;
+
+	private View view;
+	private OrbitEngine orbits;
+	private BlackHole bh;
+	private ScreenProjector projector;
+	private PVector[] screenPos;
+	private boolean matrixStack;
+
+	@Setup
+	public void setUp() {
+		view = new FixedView(0.3f, -0.5f, 1);
+		bh = new BlackHole(new PVector(950, 500, 0), OrbitBenchmark.BH_MASS);
+		orbits = new OrbitEngine(starCount, OrbitBenchmark.BH_MASS);
+		OrbitBenchmark.addRandomStars(orbits, starCount, 1);
+		projector = new ScreenProjector(orbits, bh, view, 1900, 1000);
+		screenPos = new PVector[starCount];
+
+		for (int i = 0; i < starCount; i++) {
+			screenPos[i] = new PVector();
+		}
+
+		if (method.equals("projector")) {
+			matrixStack = false;
+		} else if (method.equals("matrixStack")) {
+			matrixStack = true;
+		} else {
+			throw new IllegalArgumentException("Unknown method " + method);
+		}
+	}
+
+	@Benchmark
+	public Object project() {
+		if (!matrixStack) {
+			projector.update(null);
+
+			for (int i = 0; i < screenPos.length; i++) {
+				projector.getScreenPos(i, screenPos[i]);
+			}
+		} else {
+			// What each star used to do: build the whole transformation,
+			// apply it to the origin and allocate a new vector
+			for (int i = 0; i < screenPos.length; i++) {
+				PVector bhPos = bh.getPos();
+				PMatrix3D matrix = new PMatrix3D();
+				matrix.translate(bhPos.x, bhPos.y, bhPos.z);
+				matrix.rotateX(view.getXAng());
+				matrix.rotateY(view.getYAng());
+				matrix.scale(view.getZoom());
+				matrix.translate(orbits.getX(i), orbits.getY(i),
+						orbits.getZ(i));
+				screenPos[i] = new PVector(matrix.multX(0, 0, 0),
+						matrix.multY(0, 0, 0), matrix.multZ(0, 0, 0));
+			}
+		}
+
+		return screenPos;
+	}
+}
@@ -0,0 +1,73 @@
+package leaptests.benchmarks;
+
+import leaptests.NoiseSource;
+import processing.core.PApplet;
+import processing.core.PConstants;
+import processing.core.PGraphics;
+import processing.core.PImage;
+
+// The flares update as Star did it before FlareGenerator, with every pixel
+// painted with color() and read back with red(). A graphics object does the
+// conversions, since it doesn't need a display like the applet
+public class ReferenceFlares implements PConstants {
+	private NoiseSource noise;
+	private PGraphics colors;
+	private float radius;
+	private PImage flaresImg;
+
+	public ReferenceFlares(NoiseSource noise, int width, int height,
+			float radius) {
+		this.noise = noise;
+		this.radius = radius;
+		colors = new PGraphics();
+		colors.colorMode(RGB, 255);
+		flaresImg = new PImage(width, height, ARGB);
+	}
+
+	public PImage update(float noiseSeed) {
+		int width = flaresImg.width;
+		int height = flaresImg.height;
+
+		flaresImg.loadPixels();
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				float dist = PApplet.sqrt(PApplet.sq(x - width / 2f)
+						+ PApplet.sq(y - height / 2f));
+
+				if (dist < 0.9 * radius) {
+					float relAng = (PApplet.atan2((float) (y - height / 2f),
+							(float) (x - width / 2f)) + noise.noise(x))
+							/ TWO_PI;
+					flaresImg.pixels[x + y * width] = colors.color(255 * noise
+							.noise(0.1f * (dist - noiseSeed), 3 * relAng));
+				}
+			}
+		}
+
+		// Make the changes in a temporal array
+		int[] tempFlaresImg = new int[width * height];
+
+		for (int y = 2; y < height - 2; y++) {
+			for (int x = 2; x < width - 2; x++) {
+				float greySum = 0;
+				float counter = 0;
+
+				for (int i = -2; i < 3; i++) {
+					for (int j = -2; j < 3; j++) {
+						greySum += colors.red(flaresImg.pixels[x + i + (y + j)
+								* width]);
+						counter++;
+					}
+				}
+
+				float newGrey = greySum / counter;
+				tempFlaresImg[x + y * width] = colors.color(newGrey, newGrey);
+			}
+		}
+
+		// Replace the flares image pixels with the temporal array
+		flaresImg.pixels = tempFlaresImg;
+		flaresImg.updatePixels();
+		return flaresImg;
+	}
+}
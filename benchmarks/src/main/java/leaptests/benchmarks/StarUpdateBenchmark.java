@@ -0,0 +1,71 @@
+package leaptests.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.Random;
+import leaptests.BlackHole;
+import leaptests.OrbitBenchmark;
+import leaptests.OrbitEngine;
+import leaptests.ScreenProjector;
+import leaptests.Star;
+import processing.core.PVector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Star.update() for all the stars: trail sampling, screen position,
+// visibility and flares. Each star keeps its own flares image, so 100000
+// stars would need several GB of memory
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StarUpdateBenchmark {
+	@Param({ "10", "1000" })
+	public int starCount;
+
+	@Param({ "flares", "noFlares" })
+	public String mode;
+
+	private ScreenProjector projector;
+	private Star[] stars;
+
+	@Setup
+	public void setUp() {
+		BlackHole bh = new BlackHole(new PVector(950, 500, 0),
+				OrbitBenchmark.BH_MASS);
+		OrbitEngine orbits = new OrbitEngine(starCount, OrbitBenchmark.BH_MASS);
+		OrbitBenchmark.addRandomStars(orbits, starCount, 1);
+		projector = new ScreenProjector(orbits, bh, new FixedView(0.3f, -0.5f,
+				1), 1900, 1000);
+		projector.update(null);
+		ValueNoise noise = new ValueNoise(1);
+		Random random = new Random(1);
+		stars = new Star[starCount];
+
+		for (int i = 0; i < starCount; i++) {
+			stars[i] = new Star(projector, i, noise, 1000 * random.nextFloat());
+			stars[i].setFlaresImgEnabled(mode.equals("flares"));
+		}
+	}
+
+	@Benchmark
+	public Object update() {
+		projector.update(null);
+
+		for (int i = 0; i < stars.length; i++) {
+			stars[i].update();
+		}
+
+		return stars;
+	}
+}
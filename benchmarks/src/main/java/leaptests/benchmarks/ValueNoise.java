@@ -0,0 +1,83 @@
+package leaptests.benchmarks;
+
+import java.util.Random;
+import leaptests.NoiseSource;
+
+// Noise source for the benchmarks, which can't create an applet without a
+// display. It has the same structure as Processing's noise(): four octaves
+// of random values on a lattice, blended with a cosine curve from a lookup
+// table, and halved in amplitude at every octave. The flares only need its
+// cost and its range, not the same values
+public class ValueNoise implements NoiseSource {
+	private static final int SIZE = 4096;
+	private static final int Y_WRAP = 16;
+	private static final int OCTAVES = 4;
+	private static final float FALLOFF = 0.5f;
+	private static final int BLEND_SIZE = 360;
+
+	private float[] values;
+	private float[] blend;
+
+	public ValueNoise(long seed) {
+		Random random = new Random(seed);
+		values = new float[SIZE];
+
+		for (int i = 0; i < SIZE; i++) {
+			values[i] = random.nextFloat();
+		}
+
+		blend = new float[BLEND_SIZE];
+
+		for (int i = 0; i < BLEND_SIZE; i++) {
+			blend[i] = 0.5f * (1 - (float) Math.cos(Math.PI * i
+					/ BLEND_SIZE));
+		}
+	}
+
+	public float noise(float x) {
+		return noise(x, 0);
+	}
+
+	public float noise(float x, float y) {
+		// The noise is symmetric around zero, like Processing's
+		x = Math.abs(x);
+		y = Math.abs(y);
+		int xi = (int) x;
+		int yi = (int) y;
+		float xf = x - xi;
+		float yf = y - yi;
+		float amplitude = 0.5f;
+		float result = 0;
+
+		for (int octave = 0; octave < OCTAVES; octave++) {
+			int i = xi + yi * Y_WRAP;
+			float sx = blend[(int) (xf * BLEND_SIZE)];
+			float sy = blend[(int) (yf * BLEND_SIZE)];
+
+			float n1 = values[i & (SIZE - 1)];
+			n1 += sx * (values[(i + 1) & (SIZE - 1)] - n1);
+			float n2 = values[(i + Y_WRAP) & (SIZE - 1)];
+			n2 += sx * (values[(i + Y_WRAP + 1) & (SIZE - 1)] - n2);
+			result += amplitude * (n1 + sy * (n2 - n1));
+			amplitude *= FALLOFF;
+
+			// Double the frequency for the next octave
+			xi <<= 1;
+			xf *= 2;
+			yi <<= 1;
+			yf *= 2;
+
+			if (xf >= 1) {
+				xi++;
+				xf--;
+			}
+
+			if (yf >= 1) {
+				yi++;
+				yf--;
+			}
+		}
+
+		return result;
+	}
+}
@@ -1,10 +1,30 @@
-import com.leapmotion.leap.CircleGesture;
+import java.io.File;
+import java.io.IOException;
 import com.leapmotion.leap.Controller;
 import com.leapmotion.leap.Gesture;
-import com.leapmotion.leap.Gesture.Type;
-import com.leapmotion.leap.GestureList;
-import com.leapmotion.leap.Hand;
-import com.leapmotion.leap.Vector;
+import leaptests.BlackHole;
+import leaptests.DepthSorter;
+import leaptests.EphemerisIntegrator;
+import leaptests.FrameProfiler;
+import leaptests.GestureAdapter;
+import leaptests.GestureEngine;
+import leaptests.HandFilter;
+import leaptests.Integrator;
+import leaptests.KeplerIntegrator;
+import leaptests.LeapGesture;
+import leaptests.LeapInput;
+import leaptests.LeapReplay;
+import leaptests.LeapSnapshot;
+import leaptests.NBodyEngine;
+import leaptests.OrbitEngine;
+import leaptests.OrbitEphemeris;
+import leaptests.OrientedApplet;
+import leaptests.ScreenProjector;
+import leaptests.Star;
+import leaptests.StarEngine;
+import leaptests.StarField;
+import leaptests.SymplecticIntegrator;
+import leaptests.WorkerPool;
 import processing.core.PVector;
 import processing.data.Table;
 
@@ -12,32 +32,86 @@ public class GcOrbits extends OrientedApplet {
 	private static final long serialVersionUID = 1L;
 
 	private Controller leap;
-	private Hand controlHand;
+	private LeapInput leapInput;
+	private GestureEngine gestureEngine;
+	private int controlHand;
 	private int controlHandId;
-	public Vector controlHandPos;
-	private int lastCircleEventId;
-	private int lastCircleEventTime;
+	private PVector controlHandPos;
+	private HandFilter controlHandFilter;
+
+	// Record the Leap frames in this file, or replay them from it instead of
+	// using the device. The replay runs in real time, or one Leap frame per
+	// applet frame to measure the performance over a recorded session
+	private String recordFile = null;
+	private String replayFile = null;
+	private boolean realTimeReplay = true;
+	private LeapReplay replay;
 
 	private BlackHole gcBH;
+	private StarEngine gcStarOrbits;
+	private WorkerPool gcStarWorkers;
+	private OrbitEphemeris gcStarEphemeris;
+	private ScreenProjector gcStarProjector;
 	private Star[] gcStars;
+	private DepthSorter gcStarSorter;
+	private StarField gcStarField;
 	private float timeStep = 3 * 3600;
 	private int nSteps = 50;
+	private boolean parallelUpdate = true;
+	private boolean analyticOrbits = true;
+	private boolean cachedOrbits = false;
+	private boolean nBodyOrbits = false;
+	// The batched stars draw their flares with the shader noise, which looks
+	// different from the noise() flares of the star sprites
+	private boolean batchedStars = false;
 	private boolean drawTrails = false;
 	private float xAng = 0;
 	private float yAng = 0;
 	private float zoom = 1;
 
+	private FrameProfiler profiler;
+	private int leapPhase;
+	private int physicsPhase;
+	private int starsPhase;
+	private int sortPhase;
+	private int drawPhase;
+	private int trailsPhase;
+
 	public void setup() {
 		size(1900, 1000, P3D);
 
-		// Leap motion setup
-		leap = new Controller();
-		leap.enableGesture(Gesture.Type.TYPE_CIRCLE);
-		controlHand = leap.frame().hand(-1);
+		// Measure where the frame time goes. Press p to start profiling
+		profiler = new FrameProfiler(this);
+		leapPhase = profiler.addPhase("leap");
+		physicsPhase = profiler.addPhase("physics");
+		starsPhase = profiler.addPhase("stars");
+		sortPhase = profiler.addPhase("sort");
+		drawPhase = profiler.addPhase("draw");
+		trailsPhase = profiler.addPhase("trails");
+
+		// Leap motion setup. The listener copies the Leap frames in
+		// snapshots, so the draw loop doesn't need to call the controller
+		leapInput = new LeapInput();
+		controlHand = -1;
 		controlHandId = -1;
-		controlHandPos = new Vector();
-		lastCircleEventId = -1;
-		lastCircleEventTime = 0;
+		controlHandPos = new PVector();
+
+		// Smooth the hand positions, and extrapolate them to the time the
+		// frame will be on the screen
+		controlHandFilter = new HandFilter();
+
+		// Act on the gestures from the render thread, once per Leap gesture.
+		// A circle toggles the stellar trails
+		gestureEngine = new GestureEngine();
+		gestureEngine.addListener(new GestureAdapter() {
+			public void circleCompleted(LeapGesture circle) {
+				println("Circle gesture detected. ID: " + circle.getId()
+						+ ", circle radius: " + circle.getRadius());
+				drawTrails = !drawTrails;
+			}
+		});
+
+		startLeap();
 
 		// We will re-scale the spatial dimensions by the following factor
 		float scaling = 6e-10f;
@@ -46,11 +120,45 @@ public class GcOrbits extends OrientedApplet {
 		PVector bhPos = new PVector(width / 2, height / 2, 0);
 		float bhMass = 4.3e6f * 1.989e30f * 6.67384e-11f * 1e-9f
 				* pow(scaling, 3);
-		gcBH = new BlackHole(bhPos, bhMass, this);
+		gcBH = new BlackHole(bhPos, bhMass);
 
 		// Set the galactic center star properties
 		Table table = loadTable("sstars.csv", "header");
+		OrbitEngine testOrbits = null;
+
+		if (nBodyOrbits) {
+			// Let the stars also attract each other. The orbits are not
+			// Keplerian anymore, so they can't be solved or cached
+			float starMass = 10 * 1.989e30f * 6.67384e-11f * 1e-9f
+					* pow(scaling, 3);
+			gcStarOrbits = new NBodyEngine(table.getRowCount(), bhMass,
+					starMass);
+		} else {
+			testOrbits = new OrbitEngine(table.getRowCount(), bhMass);
+
+			if (analyticOrbits) {
+				// The stars only feel the black hole, so the orbits are
+				// Keplerian
+				testOrbits.setIntegrator(new KeplerIntegrator(table
+						.getRowCount()));
+			} else {
+				// Adapt the step to the orbital time scale, so most of the
+				// integration effort goes to the pericenter passages
+				testOrbits.setIntegrator(SymplecticIntegrator.yoshida()
+						.adaptive(0.02f, 1000));
+			}
+
+			gcStarOrbits = testOrbits;
+		}
+
+		if (parallelUpdate) {
+			gcStarWorkers = new WorkerPool(Runtime.getRuntime()
+					.availableProcessors());
+			gcStarOrbits.setWorkerPool(gcStarWorkers);
+		}
+
 		gcStars = new Star[table.getRowCount()];
+		gcStarSorter = new DepthSorter();
 
 		for (int i = 0; i < gcStars.length; i++) {
 			PVector starPos = new PVector(table.getFloat(i, "x"),
@@ -60,106 +168,219 @@ public class GcOrbits extends OrientedApplet {
 			starPos.mult(scaling);
 			starVel.mult(scaling);
 
-			gcStars[i] = new Star(starPos, starVel, gcBH, this);
+			gcStarOrbits.addStar(starPos, starVel);
 		}
-	}
 
-	public void draw() {
-		background(0);
+		// Project the initial star positions, so the stars start at the
+		// right place on the screen
+		gcStarProjector = new ScreenProjector(gcStarOrbits, gcBH, this,
+				width, height);
+		gcStarProjector.update(g);
 
-		// Get the gestures
-		GestureList gestures = leap.frame().gestures();
+		for (int i = 0; i < gcStars.length; i++) {
+			gcStars[i] = new Star(gcStarProjector, i, this, random(1000));
+		}
 
-		for (int i = 0; i < gestures.count(); i++) {
-			if (gestures.get(i).type() == Type.TYPE_CIRCLE) {
-				CircleGesture circle = new CircleGesture(gestures.get(i));
+		if (cachedOrbits && !nBodyOrbits) {
+			// Precompute the orbits in the background, so the frames only
+			// need to interpolate them once the ephemeris is ready
+			Integrator sampler = analyticOrbits ? new KeplerIntegrator(
+					gcStars.length) : testOrbits.getIntegrator();
+			gcStarEphemeris = new OrbitEphemeris(testOrbits, sampler, 512,
+					1e10);
+			gcStarEphemeris.startBuilding();
+			testOrbits.setIntegrator(new EphemerisIntegrator(gcStarEphemeris,
+					testOrbits.getIntegrator()));
+		}
 
-				if (circle.isValid() && circle.id() != lastCircleEventId
-						&& (millis() - lastCircleEventTime) > 3000
-						&& circle.progress() > 1 && circle.radius() < 30) {
-					println("Circle gesture detected. ID: " + circle.id()
-							+ ", circle radius: " + circle.radius());
-					lastCircleEventId = circle.id();
-					lastCircleEventTime = millis();
+		if (batchedStars) {
+			// Draw the stars as point sprites if the renderer supports it. The
+			// shader animates the flares, so the flares images are not needed
+			gcStarField = new StarField(this, gcStars.length);
 
-					drawTrails = !drawTrails;
+			if (gcStarField.isAvailable()) {
+				for (int i = 0; i < gcStars.length; i++) {
+					gcStars[i].setFlaresImgEnabled(false);
 				}
 			}
 		}
+	}
+
+	private void startLeap() {
+		if (replayFile != null) {
+			// Play a recorded session instead of using the device
+			try {
+				replay = new LeapReplay(leapInput,
+						new File(sketchPath(replayFile)));
+			} catch (IOException e) {
+				throw new RuntimeException("Could not open the Leap recording "
+						+ replayFile, e);
+			}
+
+			if (realTimeReplay) {
+				replay.setLooping(true);
+				replay.start();
+			} else {
+				// Measure the performance over the whole recording
+				profiler.setEnabled(true);
+			}
+
+			return;
+		}
+
+		leap = new Controller();
+		leap.enableGesture(Gesture.Type.TYPE_CIRCLE);
+		leap.addListener(leapInput);
+
+		if (recordFile != null) {
+			try {
+				leapInput.startRecording(new File(sketchPath(recordFile)));
+			} catch (IOException e) {
+				println("Could not record the Leap frames: " + e.getMessage());
+			}
+		}
+	}
+
+	private void stepReplay() {
+		// Advance the recording one frame per applet frame, and save the
+		// frame profile at the end
+		try {
+			if (!replay.step()) {
+				println("Frame profile saved in " + profiler.exportCsv());
+				exit();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read the Leap recording "
+					+ replayFile, e);
+		}
+	}
+
+	public void dispose() {
+		// Close the recording, so the last frames are not lost
+		if (leapInput != null) {
+			leapInput.stopRecording();
+		}
+
+		// Stop the background threads started in setup()
+		if (gcStarWorkers != null) {
+			gcStarWorkers.shutdown();
+		}
+
+		if (gcStarEphemeris != null) {
+			gcStarEphemeris.stopBuilding();
+		}
+
+		super.dispose();
+	}
+
+	public void draw() {
+		profiler.beginFrame();
+
+		if (replay != null && !realTimeReplay) {
+			stepReplay();
+		}
+		background(0);
+
+		// Read the Leap data once, and act on the gestures received since the
+		// last frame
+		profiler.begin(leapPhase);
+		LeapSnapshot input = leapInput.getSnapshot();
+
+		gestureEngine.update(leapInput);
 
 		// Get the control hand if it's available
-		controlHand = leap.frame().hand(controlHandId);
+		controlHand = input.findHand(controlHandId);
 
-		if (!controlHand.isValid()) {
+		if (controlHand < 0) {
 			// Use the right most hand if it's available
-			Hand rightHand = leap.frame().hands().rightmost();
+			controlHand = input.getRightmostHand();
 
-			if (rightHand.isValid()) {
-				controlHand = rightHand;
-				controlHandId = controlHand.id();
+			if (controlHand >= 0) {
+				controlHandId = input.getHandId(controlHand);
+				controlHandFilter.reset();
 			}
 		}
 
-		if (controlHand.isValid() && controlHand.palmPosition().isValid()) {
-			controlHandPos = controlHand.palmPosition();
+		if (controlHand >= 0 && input.isPalmValid(controlHand)) {
+			controlHandFilter.update(input.getPalmX(controlHand),
+					input.getPalmY(controlHand), input.getPalmZ(controlHand),
+					input.getTimestamp());
+			controlHandFilter.getPredictedPosition(controlHandPos);
 		}
 
+		profiler.end(leapPhase);
+
 		// Calculate the rotation angles and zoom factor
-		xAng = PI * (controlHandPos.getY() - 150f) / 150f;
-		yAng = -HALF_PI + PI * controlHandPos.getX() / 150f;
-		zoom = 100f / (100f + controlHandPos.getZ());
+		xAng = PI * (controlHandPos.y - 150f) / 150f;
+		yAng = -HALF_PI + PI * controlHandPos.x / 150f;
+		zoom = 100f / (100f + controlHandPos.z);
 
 		// Update the stellar coordinates
+		profiler.begin(physicsPhase);
+		gcStarOrbits.update(timeStep, nSteps);
+		gcStarProjector.update(g);
+		profiler.end(physicsPhase);
+
+		profiler.begin(starsPhase);
+
 		for (int i = 0; i < gcStars.length; i++) {
-			gcStars[i].update(timeStep, nSteps);
+			gcStars[i].update();
 		}
 
+		profiler.end(starsPhase);
+
 		// Trick to deal with transparent images:
 		// Order the stars according to their z position and draw first those
 		// that are more distant
-		boolean gcBHDrawn = false;
-		boolean[] gcStarDrawn = new boolean[gcStars.length];
-		int starCounter = 0;
+		profiler.begin(sortPhase);
+		int[] starOrder = gcStarSorter.sort(gcStars);
+		profiler.end(sortPhase);
+
+		profiler.begin(drawPhase);
 
-		while (starCounter < gcStars.length) {
-			// Select the most distant star in this iteration
-			float minZValue = Float.MAX_VALUE;
-			int starIndex = -1;
+		if (gcStarField != null && gcStarField.isAvailable()) {
+			// Draw all the stars and the black hole in one call
+			gcStarField.draw(gcStars, starOrder, gcBH);
+		} else {
+			float bhZ = gcBH.getPos().z;
+			boolean gcBHDrawn = false;
 
 			for (int i = 0; i < gcStars.length; i++) {
-				if (!gcStarDrawn[i] && gcStars[i].getScreenPos().z < minZValue) {
-					minZValue = gcStars[i].getScreenPos().z;
-					starIndex = i;
+				Star star = gcStars[starOrder[i]];
+
+				// Check if the black hole needs to be drawn
+				if (star.getScreenPos().z > bhZ && !gcBHDrawn) {
+					gcBH.draw(this);
+					gcBHDrawn = true;
 				}
-			}
 
-			// Check if the black hole needs to be drawn
-			if (minZValue > gcBH.getPos().z && !gcBHDrawn) {
-				gcBH.draw();
-				gcBHDrawn = true;
+				// Draw the star
+				star.draw(this);
 			}
-
-			// Draw the star
-			gcStars[starIndex].draw();
-			gcStarDrawn[starIndex] = true;
-			starCounter++;
 		}
 
+		profiler.end(drawPhase);
+
 		// Draw the stellar trails
 		if (drawTrails) {
+			profiler.begin(trailsPhase);
 			hint(DISABLE_DEPTH_TEST);
 
 			for (int i = 0; i < gcStars.length; i++) {
-				gcStars[i].drawTrail();
+				gcStars[i].drawTrail(this);
 			}
 
 			hint(ENABLE_DEPTH_TEST);
+			profiler.end(trailsPhase);
 		}
 		
 
 		hint(DISABLE_DEPTH_TEST);
 		text("Hola "+ frameRate, 100, 100);
 		hint(ENABLE_DEPTH_TEST);
+
+		profiler.endFrame();
+		profiler.drawOverlay();
 	}
 
 	public float getXAng() {
@@ -1,126 +1,213 @@
+import java.io.File;
+import java.io.IOException;
 import processing.core.PApplet;
-import com.leapmotion.leap.CircleGesture;
+import processing.core.PVector;
 import com.leapmotion.leap.Controller;
 import com.leapmotion.leap.Gesture;
-import com.leapmotion.leap.GestureList;
-import com.leapmotion.leap.Hand;
-import com.leapmotion.leap.HandList;
-import com.leapmotion.leap.Vector;
-import saito.objloader.OBJModel;
+import leaptests.FrameProfiler;
+import leaptests.GestureAdapter;
+import leaptests.GestureEngine;
+import leaptests.HandFilter;
+import leaptests.LeapGesture;
+import leaptests.LeapInput;
+import leaptests.LeapReplay;
+import leaptests.LeapSnapshot;
+import leaptests.Mesh;
+import leaptests.MeshCache;
 
 public class ProcessingTest extends PApplet {
 	private static final long serialVersionUID = 1L;
 
-	private OBJModel model;
-	private OBJModel herschel;
-	private OBJModel itokawa;
+	private Mesh herschel;
+	private Mesh itokawa;
+	private boolean showItokawa;
 	private Controller leap;
-	private Hand controlHand;
-	private Hand lightHand;
+	private LeapInput leapInput;
+	private GestureEngine gestureEngine;
+	private int controlHand;
+	private int lightHand;
 	private int controlHandId;
 	private int lightHandId;
-	private Vector controlHandPos;
-	private Vector lightHandPos;
-	private int lastCircleEventId;
-	private int lastCircleEventTime;
+	private PVector controlHandPos;
+	private HandFilter controlHandFilter;
+	private PVector lightHandPos;
+	private HandFilter lightHandFilter;
+
+	// Record the Leap frames in this file, or replay them from it instead of
+	// using the device. The replay runs in real time, or one Leap frame per
+	// applet frame to measure the performance over a recorded session
+	private String recordFile = null;
+	private String replayFile = null;
+	private boolean realTimeReplay = true;
+	private LeapReplay replay;
+
+	private FrameProfiler profiler;
+	private int leapPhase;
+	private int modelPhase;
 
 	public void setup() {
 		size(1900, 1000, P3D);
 		fill(255);
 		noStroke();
 
-		// Load the models
-		herschel = new OBJModel(this, "HerschelExport.obj", POLYGON);
-		herschel.disableTexture();
-		herschel.scale(0.12f);
+		// Measure where the frame time goes. Press p to start profiling
+		profiler = new FrameProfiler(this);
+		leapPhase = profiler.addPhase("leap");
+		modelPhase = profiler.addPhase("model");
 
-		itokawa = new OBJModel(this, "itokawa99846.obj", TRIANGLES);
-		itokawa.disableTexture();
-		itokawa.disableMaterial();
-		itokawa.scale(1500f);
+		// Load the models
+		// The models are only parsed the first time. The next times they're
+		// loaded from a binary copy. The satellite keeps the colors of its
+		// materials
+		herschel = MeshCache.load(this, "HerschelExport.obj", true);
+		herschel.setScale(0.12f);
+		itokawa = MeshCache.load(this, "itokawa99846.obj");
+		itokawa.setScale(1500f);
 
 		// Start with the Herschel model
-		model = herschel;
+		showItokawa = false;
+
+		// Leap motion setup. The listener copies the Leap frames in
+		// snapshots, so the draw loop doesn't need to call the controller
+		leapInput = new LeapInput();
+		controlHand = -1;
+		lightHand = -1;
+		controlHandId = -1;
+		lightHandId = -1;
+		controlHandPos = new PVector();
+		lightHandPos = new PVector();
+
+		// Smooth the hand positions, and extrapolate them to the time the
+		// frame will be on the screen
+		controlHandFilter = new HandFilter();
+		lightHandFilter = new HandFilter();
+
+		// Act on the gestures from the render thread, once per Leap gesture.
+		// A circle changes the model that will be shown
+		gestureEngine = new GestureEngine();
+		gestureEngine.addListener(new GestureAdapter() {
+			public void circleCompleted(LeapGesture circle) {
+				println("Circle gesture detected. ID: " + circle.getId()
+						+ ", circle radius: " + circle.getRadius());
+				showItokawa = !showItokawa;
+			}
+
+			public void swiped(LeapGesture swipe) {
+				println("Swipe gesture detected.");
+			}
+
+			public void keyTapped(LeapGesture keyTap) {
+				println("Key tap gesture detected.");
+			}
+
+			public void screenTapped(LeapGesture screenTap) {
+				println("Screen tap gesture detected.");
+			}
+		});
+
+		startLeap();
+	}
+
+	private void startLeap() {
+		if (replayFile != null) {
+			// Play a recorded session instead of using the device
+			try {
+				replay = new LeapReplay(leapInput,
+						new File(sketchPath(replayFile)));
+			} catch (IOException e) {
+				throw new RuntimeException("Could not open the Leap recording "
+						+ replayFile, e);
+			}
+
+			if (realTimeReplay) {
+				replay.setLooping(true);
+				replay.start();
+			} else {
+				// Measure the performance over the whole recording
+				profiler.setEnabled(true);
+			}
+
+			return;
+		}
 
-		// Leap motion setup
 		leap = new Controller();
 		leap.enableGesture(Gesture.Type.TYPE_CIRCLE);
 		leap.enableGesture(Gesture.Type.TYPE_SWIPE);
 		leap.enableGesture(Gesture.Type.TYPE_KEY_TAP);
 		leap.enableGesture(Gesture.Type.TYPE_SCREEN_TAP);
-		controlHand = leap.frame().hand(-1);
-		lightHand = leap.frame().hand(-1);
-		controlHandId = -1;
-		lightHandId = -1;
-		controlHandPos = new Vector();
-		lightHandPos = new Vector();
-		lastCircleEventId = -1;
-		lastCircleEventTime = 0;
 
 		if (leap.config().setFloat("Gesture.Circle.MinRadius", 10.0f)
 				&& leap.config().setFloat("Gesture.Circle.MinArc", TWO_PI)) {
 			leap.config().save();
 		}
+
+		leap.addListener(leapInput);
+
+		if (recordFile != null) {
+			try {
+				leapInput.startRecording(new File(sketchPath(recordFile)));
+			} catch (IOException e) {
+				println("Could not record the Leap frames: " + e.getMessage());
+			}
+		}
+	}
+
+	private void stepReplay() {
+		// Advance the recording one frame per applet frame, and save the
+		// frame profile at the end
+		try {
+			if (!replay.step()) {
+				println("Frame profile saved in " + profiler.exportCsv());
+				exit();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read the Leap recording "
+					+ replayFile, e);
+		}
+	}
+
+	public void dispose() {
+		// Close the recording, so the last frames are not lost
+		if (leapInput != null) {
+			leapInput.stopRecording();
+		}
+
+		super.dispose();
 	}
 
 	public void draw() {
-		background(0);
+		profiler.beginFrame();
 
-		// Get the gestures
-		GestureList gestures = leap.frame().gestures();
-
-		for (int i = 0; i < gestures.count(); i++) {
-			Gesture gesture = gestures.get(i);
-
-			switch (gesture.type()) {
-			case TYPE_CIRCLE:
-				CircleGesture circle = new CircleGesture(gesture);
-
-				if (circle.isValid() && circle.id() != lastCircleEventId
-						&& (millis() - lastCircleEventTime) > 3000
-						&& circle.progress() > 1 && circle.radius() < 30) {
-					println("Circle gesture detected. ID: " + circle.id()
-							+ ", circle radius: " + circle.radius());
-					lastCircleEventId = circle.id();
-					lastCircleEventTime = millis();
-
-					// Change the model that will be shown
-					if (model.equals(herschel)) {
-						model = itokawa;
-					} else {
-						model = herschel;
-					}
-				}
-				break;
-			case TYPE_SWIPE:
-				println("Swipe gesture detected.");
-				break;
-			case TYPE_KEY_TAP:
-				println("Key tap gesture detected.");
-				break;
-			case TYPE_SCREEN_TAP:
-				println("Screen tap gesture detected.");
-				break;
-			default:
-				break;
-			}
+		if (replay != null && !realTimeReplay) {
+			stepReplay();
 		}
+		background(0);
+
+		// Read the Leap data once, and act on the gestures received since the
+		// last frame
+		profiler.begin(leapPhase);
+		LeapSnapshot input = leapInput.getSnapshot();
+
+		gestureEngine.update(leapInput);
 
 		// Get the hand that controls the models if it's available
-		controlHand = leap.frame().hand(controlHandId);
+		controlHand = input.findHand(controlHandId);
 
-		if (!controlHand.isValid()) {
+		if (controlHand < 0) {
 			// Use the right most hand if it's available
-			Hand rightHand = leap.frame().hands().rightmost();
+			controlHand = input.getRightmostHand();
 
-			if (rightHand.isValid()) {
-				controlHand = rightHand;
-				controlHandId = controlHand.id();
+			if (controlHand >= 0) {
+				controlHandId = input.getHandId(controlHand);
+				controlHandFilter.reset();
 			}
 		}
 
-		if (controlHand.isValid() && controlHand.palmPosition().isValid()) {
-			controlHandPos = controlHand.palmPosition();
+		if (controlHand >= 0 && input.isPalmValid(controlHand)) {
+			controlHandFilter.update(input.getPalmX(controlHand),
+					input.getPalmY(controlHand), input.getPalmZ(controlHand),
+					input.getTimestamp());
+			controlHandFilter.getPredictedPosition(controlHandPos);
 		}
 
 		// Get the hand that controls the illumination
@@ -128,49 +215,63 @@ public class ProcessingTest extends PApplet {
 			lightHandId = -1;
 		}
 
-		lightHand = leap.frame().hand(lightHandId);
+		lightHand = input.findHand(lightHandId);
 
-		if (!lightHand.isValid()) {
+		if (lightHand < 0) {
 			// Use the left most hand if it's available
-			Hand leftHand = leap.frame().hands().leftmost();
+			int leftHand = input.getLeftmostHand();
 
-			if (leftHand.isValid() && leftHand.id() != controlHandId) {
+			if (leftHand >= 0 && input.getHandId(leftHand) != controlHandId) {
 				lightHand = leftHand;
-				lightHandId = lightHand.id();
+				lightHandId = input.getHandId(lightHand);
+				lightHandFilter.reset();
 			} else {
 				// Loop over the hands and select the first that is available
-				HandList hands = leap.frame().hands();
-
-				for (int i = 0; i < hands.count(); i++) {
-					Hand hand = hands.get(i);
-
-					if (hand.isValid() && hand.id() != controlHandId) {
-						lightHand = hand;
-						lightHandId = hand.id();
+				for (int i = 0; i < input.getHandCount(); i++) {
+					if (input.getHandId(i) != controlHandId) {
+						lightHand = i;
+						lightHandId = input.getHandId(i);
+						lightHandFilter.reset();
 						break;
 					}
 				}
 			}
 		}
 
-		if (lightHand.isValid() && lightHand.fingers().frontmost().isValid()) {
-			lightHandPos = lightHand.fingers().frontmost().tipPosition();
+		if (lightHand >= 0 && input.isTipValid(lightHand)) {
+			lightHandFilter.update(input.getTipX(lightHand),
+					input.getTipY(lightHand), input.getTipZ(lightHand),
+					input.getTimestamp());
+			lightHandFilter.getPredictedPosition(lightHandPos);
 		}
 
+		profiler.end(leapPhase);
+
 		// Set the illumination
-		float dirY = -(lightHandPos.getY() - 150f) / 100f;
-		float dirX = (lightHandPos.getX() + 50f) / 100f;
+		float dirY = -(lightHandPos.y - 150f) / 100f;
+		float dirX = (lightHandPos.x + 50f) / 100f;
 		directionalLight(255, 255, 255, -dirX, -dirY, -1);
 
 		// Draw the model
+		profiler.begin(modelPhase);
 		pushMatrix();
 		pushStyle();
 		translate(width / 2f, height / 2f);
-		rotateX(TWO_PI * (controlHandPos.getY() - 150f) / 150f);
-		rotateY(-HALF_PI + TWO_PI * controlHandPos.getX() / 150f);
-		scale(200f / (200f + controlHandPos.getZ()));
-		model.draw();
+		rotateX(TWO_PI * (controlHandPos.y - 150f) / 150f);
+		rotateY(-HALF_PI + TWO_PI * controlHandPos.x / 150f);
+		scale(200f / (200f + controlHandPos.z));
+
+		if (showItokawa) {
+			itokawa.draw(this);
+		} else {
+			herschel.draw(this);
+		}
+
 		popStyle();
 		popMatrix();
+		profiler.end(modelPhase);
+
+		profiler.endFrame();
+		profiler.drawOverlay();
 	}
 }
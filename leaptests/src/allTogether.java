@@ -1,38 +1,80 @@
+import java.io.File;
+import java.io.IOException;
 import processing.core.PFont;
 import processing.core.PImage;
 import processing.core.PVector;
 import processing.data.Table;
-import com.leapmotion.leap.CircleGesture;
 import com.leapmotion.leap.Controller;
 import com.leapmotion.leap.Gesture;
-import com.leapmotion.leap.Gesture.Type;
-import com.leapmotion.leap.GestureList;
-import com.leapmotion.leap.Hand;
-import com.leapmotion.leap.HandList;
-import com.leapmotion.leap.Vector;
-import saito.objloader.OBJModel;
+import leaptests.BlackHole;
+import leaptests.DepthSorter;
+import leaptests.EphemerisIntegrator;
+import leaptests.FrameProfiler;
+import leaptests.GestureAdapter;
+import leaptests.GestureEngine;
+import leaptests.HandFilter;
+import leaptests.Integrator;
+import leaptests.KeplerIntegrator;
+import leaptests.LeapGesture;
+import leaptests.LeapInput;
+import leaptests.LeapReplay;
+import leaptests.LeapSnapshot;
+import leaptests.Mesh;
+import leaptests.MeshCache;
+import leaptests.NBodyEngine;
+import leaptests.OrbitEngine;
+import leaptests.OrbitEphemeris;
+import leaptests.OrientedApplet;
+import leaptests.ScreenProjector;
+import leaptests.Star;
+import leaptests.StarEngine;
+import leaptests.StarField;
+import leaptests.SymplecticIntegrator;
+import leaptests.WorkerPool;
 
 public class allTogether extends OrientedApplet {
 	private static final long serialVersionUID = 1L;
 
 	private Controller leap;
-	private Hand controlHand;
-	private Hand lightHand;
+	private LeapInput leapInput;
+	private GestureEngine gestureEngine;
+	private int controlHand;
+	private int lightHand;
 	private int controlHandId;
 	private int lightHandId;
-	private Vector controlHandPos;
-	private Vector lightHandPos;
-	private int lastCircleEventId;
-	private int lastCircleEventTime;
-
-	private OBJModel model;
-	private OBJModel herschel;
-	private OBJModel itokawa;
+	private PVector controlHandPos;
+	private HandFilter controlHandFilter;
+	private PVector lightHandPos;
+	private HandFilter lightHandFilter;
+
+	// Record the Leap frames in this file, or replay them from it instead of
+	// using the device. The replay runs in real time, or one Leap frame per
+	// applet frame to measure the performance over a recorded session
+	private String recordFile = null;
+	private String replayFile = null;
+	private boolean realTimeReplay = true;
+	private LeapReplay replay;
+
+	private Mesh herschel;
+	private Mesh itokawa;
 
 	private BlackHole gcBH;
+	private StarEngine gcStarOrbits;
+	private WorkerPool gcStarWorkers;
+	private OrbitEphemeris gcStarEphemeris;
+	private ScreenProjector gcStarProjector;
 	private Star[] gcStars;
+	private DepthSorter gcStarSorter;
+	private StarField gcStarField;
 	private float timeStep = 3 * 3600;
 	private int nSteps = 50;
+	private boolean parallelUpdate = true;
+	private boolean analyticOrbits = true;
+	private boolean cachedOrbits = false;
+	private boolean nBodyOrbits = false;
+	// The batched stars draw their flares with the shader noise, which looks
+	// different from the noise() flares of the star sprites
+	private boolean batchedStars = false;
 
 	private int layer;
 
@@ -40,6 +82,16 @@ public class allTogether extends OrientedApplet {
 	private PFont descriptionFont = createFont("SansSerif.plain", 15);
 	private PImage imgPalm;
 	private PImage imgCircle;
+
+	private FrameProfiler profiler;
+	private int leapPhase;
+	private int modelPhase;
+	private int physicsPhase;
+	private int starsPhase;
+	private int sortPhase;
+	private int drawPhase;
+	private int trailsPhase;
+	private int textPhase;
 	
 	public static void main(String[] args) {
 		OrientedApplet.main(new String[] { allTogether.class.getName() });
@@ -49,33 +101,68 @@ public class allTogether extends OrientedApplet {
 		size(1900, 1000, P3D);
 		background(0);
 
-		// Leap motion setup
-		leap = new Controller();
-		leap.enableGesture(Gesture.Type.TYPE_CIRCLE);
-		leap.enableGesture(Gesture.Type.TYPE_KEY_TAP);
-		controlHand = leap.frame().hand(-1);
-		lightHand = leap.frame().hand(-1);
+		// Measure where the frame time goes. Press p to start profiling
+		profiler = new FrameProfiler(this);
+		leapPhase = profiler.addPhase("leap");
+		modelPhase = profiler.addPhase("model");
+		physicsPhase = profiler.addPhase("physics");
+		starsPhase = profiler.addPhase("stars");
+		sortPhase = profiler.addPhase("sort");
+		drawPhase = profiler.addPhase("draw");
+		trailsPhase = profiler.addPhase("trails");
+		textPhase = profiler.addPhase("text");
+
+		// Leap motion setup. The listener copies the Leap frames in
+		// snapshots, so the draw loop doesn't need to call the controller
+		leapInput = new LeapInput();
+		controlHand = -1;
+		lightHand = -1;
 		controlHandId = -1;
 		lightHandId = -1;
-		controlHandPos = new Vector();
-		lightHandPos = new Vector();
-		lastCircleEventId = -1;
-		lastCircleEventTime = 0;
+		controlHandPos = new PVector();
+		lightHandPos = new PVector();
+
+		// Smooth the hand positions, and extrapolate them to the time the
+		// frame will be on the screen
+		controlHandFilter = new HandFilter();
+		lightHandFilter = new HandFilter();
+
+		// Act on the gestures from the render thread, once per Leap gesture
+		gestureEngine = new GestureEngine();
+		gestureEngine.addListener(new GestureAdapter() {
+			public void circleCompleted(LeapGesture circle) {
+				println("Valid circle gesture. ID: " + circle.getId() + ", circle radius: " + circle.getRadius());
+
+				// Change the model that will be shown
+				//layer = (layer + 1) % 3;
+
+				if (layer == 0) {
+					//model = herschel;
+				} else if (layer == 1) {
+					//model = itokawa;
+				}
+			}
 
-		if (leap.config().setFloat("Gesture.Circle.MinRadius", 10.0f)
-				&& leap.config().setFloat("Gesture.Circle.MinArc", TWO_PI)) {
-			leap.config().save();
-		}
+			public void keyTapped(LeapGesture keyTap) {
+				println("Key tap gesture detected.");
 
-		// Load the obj models
-		herschel = new OBJModel(this, "HerschelExport.obj", POLYGON);
-		herschel.disableTexture();
-		herschel.scale(0.12f);
+				// Clear the stellar trails
+				for (int s = 0; s < gcStars.length; s++) {
+					gcStars[s].clearTrail();
+				}
+			}
+		});
+
+		startLeap();
 
-		itokawa = new OBJModel(this, "itokawa99846.obj", TRIANGLES);
-		itokawa.disableTexture();
-		itokawa.disableMaterial();
-		itokawa.scale(1500f);
+		// Load the obj models
+		// The models are only parsed the first time. The next times they're
+		// loaded from a binary copy. The satellite keeps the colors of its
+		// materials
+		herschel = MeshCache.load(this, "HerschelExport.obj", true);
+		herschel.setScale(0.12f);
+		itokawa = MeshCache.load(this, "itokawa99846.obj");
+		itokawa.setScale(1500f);
 
 		// Galactic center orbits setup
 		// We will re-scale the spatial dimensions by the following factor
@@ -84,11 +171,45 @@ public class allTogether extends OrientedApplet {
 		// Set the galactic center black hole properties
 		PVector bhPos = new PVector(width / 2f, height / 2f, 0);
 		float bhMass = 4.3e6f * 1.989e30f * 6.67384e-11f * 1e-9f * pow(scaling, 3);
-		gcBH = new BlackHole(bhPos, bhMass, this);
+		gcBH = new BlackHole(bhPos, bhMass);
 
 		// Set the galactic center star properties
 		Table table = loadTable("sstars.csv", "header");
+		OrbitEngine testOrbits = null;
+
+		if (nBodyOrbits) {
+			// Let the stars also attract each other. The orbits are not
+			// Keplerian anymore, so they can't be solved or cached
+			float starMass = 10 * 1.989e30f * 6.67384e-11f * 1e-9f
+					* pow(scaling, 3);
+			gcStarOrbits = new NBodyEngine(table.getRowCount(), bhMass,
+					starMass);
+		} else {
+			testOrbits = new OrbitEngine(table.getRowCount(), bhMass);
+
+			if (analyticOrbits) {
+				// The stars only feel the black hole, so the orbits are
+				// Keplerian
+				testOrbits.setIntegrator(new KeplerIntegrator(table
+						.getRowCount()));
+			} else {
+				// Adapt the step to the orbital time scale, so most of the
+				// integration effort goes to the pericenter passages
+				testOrbits.setIntegrator(SymplecticIntegrator.yoshida()
+						.adaptive(0.02f, 1000));
+			}
+
+			gcStarOrbits = testOrbits;
+		}
+
+		if (parallelUpdate) {
+			gcStarWorkers = new WorkerPool(Runtime.getRuntime()
+					.availableProcessors());
+			gcStarOrbits.setWorkerPool(gcStarWorkers);
+		}
+
 		gcStars = new Star[table.getRowCount()];
+		gcStarSorter = new DepthSorter();
 
 		for (int i = 0; i < gcStars.length; i++) {
 			PVector starPos = new PVector(table.getFloat(i, "x"), table.getFloat(i, "y"), table.getFloat(i, "z"));
@@ -96,11 +217,44 @@ public class allTogether extends OrientedApplet {
 			starPos.mult(scaling);
 			starVel.mult(scaling);
 
-			gcStars[i] = new Star(starPos, starVel, gcBH, this);
+			gcStarOrbits.addStar(starPos, starVel);
+		}
+
+		// Project the initial star positions, so the stars start at the
+		// right place on the screen
+		gcStarProjector = new ScreenProjector(gcStarOrbits, gcBH, this,
+				width, height);
+		gcStarProjector.update(g);
+
+		for (int i = 0; i < gcStars.length; i++) {
+			gcStars[i] = new Star(gcStarProjector, i, this, random(1000));
+		}
+
+		if (cachedOrbits && !nBodyOrbits) {
+			// Precompute the orbits in the background, so the frames only
+			// need to interpolate them once the ephemeris is ready
+			Integrator sampler = analyticOrbits ? new KeplerIntegrator(
+					gcStars.length) : testOrbits.getIntegrator();
+			gcStarEphemeris = new OrbitEphemeris(testOrbits, sampler, 512,
+					1e10);
+			gcStarEphemeris.startBuilding();
+			testOrbits.setIntegrator(new EphemerisIntegrator(gcStarEphemeris,
+					testOrbits.getIntegrator()));
+		}
+
+		if (batchedStars) {
+			// Draw the stars as point sprites if the renderer supports it. The
+			// shader animates the flares, so the flares images are not needed
+			gcStarField = new StarField(this, gcStars.length);
+
+			if (gcStarField.isAvailable()) {
+				for (int i = 0; i < gcStars.length; i++) {
+					gcStars[i].setFlaresImgEnabled(false);
+				}
+			}
 		}
 
 		// Start with the Herschel model
-		model = herschel;
 		layer = 0;
 
 		imgPalm = loadImage("Leap_Palm_Vectors.png");
@@ -109,9 +263,96 @@ public class allTogether extends OrientedApplet {
 		imgCircle.resize(150, 0);
 	}
 
+	private void startLeap() {
+		if (replayFile != null) {
+			// Play a recorded session instead of using the device
+			try {
+				replay = new LeapReplay(leapInput,
+						new File(sketchPath(replayFile)));
+			} catch (IOException e) {
+				throw new RuntimeException("Could not open the Leap recording "
+						+ replayFile, e);
+			}
+
+			if (realTimeReplay) {
+				replay.setLooping(true);
+				replay.start();
+			} else {
+				// Measure the performance over the whole recording
+				profiler.setEnabled(true);
+			}
+
+			return;
+		}
+
+		leap = new Controller();
+		leap.enableGesture(Gesture.Type.TYPE_CIRCLE);
+		leap.enableGesture(Gesture.Type.TYPE_KEY_TAP);
+
+		if (leap.config().setFloat("Gesture.Circle.MinRadius", 10.0f)
+				&& leap.config().setFloat("Gesture.Circle.MinArc", TWO_PI)) {
+			leap.config().save();
+		}
+
+		leap.addListener(leapInput);
+
+		if (recordFile != null) {
+			try {
+				leapInput.startRecording(new File(sketchPath(recordFile)));
+			} catch (IOException e) {
+				println("Could not record the Leap frames: " + e.getMessage());
+			}
+		}
+	}
+
+	private void stepReplay() {
+		// Advance the recording one frame per applet frame, and save the
+		// frame profile at the end
+		try {
+			if (!replay.step()) {
+				println("Frame profile saved in " + profiler.exportCsv());
+				exit();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read the Leap recording "
+					+ replayFile, e);
+		}
+	}
+
+	public void dispose() {
+		// Close the recording, so the last frames are not lost
+		if (leapInput != null) {
+			leapInput.stopRecording();
+		}
+
+		// Stop the background threads started in setup()
+		if (gcStarWorkers != null) {
+			gcStarWorkers.shutdown();
+		}
+
+		if (gcStarEphemeris != null) {
+			gcStarEphemeris.stopBuilding();
+		}
+
+		super.dispose();
+	}
+
 	public void draw() {
+		profiler.beginFrame();
+
+		if (replay != null && !realTimeReplay) {
+			stepReplay();
+		}
+
+		// Read the Leap data once per frame, and act on the gestures
+		// received since the last frame, also when nothing is drawn
+		profiler.begin(leapPhase);
+		LeapSnapshot input = leapInput.getSnapshot();
+		gestureEngine.update(leapInput);
+		profiler.end(leapPhase);
+
 		// Trick to slow the computation when it's not necessary
-		if (leap.frame().hands().count() == 0 && (layer == 0 || layer == 1)) {
+		if (input.getHandCount() == 0 && (layer == 0 || layer == 1)) {
 			// Reduce the frame rate and don't draw anything
 			frameRate(4);
 			// background(0);
@@ -120,59 +361,27 @@ public class allTogether extends OrientedApplet {
 			frameRate(60);
 			background(0);
 
-			// Get the gestures and act accordingly
-			GestureList gestures = leap.frame().gestures();
-
-			for (int i = 0; i < gestures.count(); i++) {
-				Gesture gesture = gestures.get(i);
-
-				if (gesture.type() == Type.TYPE_CIRCLE) {
-					println("Circle gesture detected.");
-					CircleGesture circle = new CircleGesture(gesture);
-
-					if (circle.isValid() && circle.id() != lastCircleEventId && (millis() - lastCircleEventTime) > 3000
-							&& circle.progress() > 1 && circle.radius() < 30) {
-						println("Valid circle gesture. ID: " + circle.id() + ", circle radius: " + circle.radius());
-
-						// Change the model that will be shown
-						//layer = (layer + 1) % 3;
-
-						if (layer == 0) {
-							//model = herschel;
-						} else if (layer == 1) {
-							//model = itokawa;
-						}
-
-						lastCircleEventId = circle.id();
-						lastCircleEventTime = millis();
-					}
-				} else if (gesture.type() == Type.TYPE_KEY_TAP) {
-					println("Key tap gesture detected.");
-
-					// Clear the stellar trails
-					for (int s = 0; s < gcStars.length; s++) {
-						gcStars[s].clearTrail();
-					}
-				}
-			}
-
 			// Get the hand that controls the models if it's available
-			controlHand = leap.frame().hand(controlHandId);
+			profiler.begin(leapPhase);
+			controlHand = input.findHand(controlHandId);
 
-			if (!controlHand.isValid()) {
+			if (controlHand < 0) {
 				// Use the right most hand if it's available
-				Hand rightHand = leap.frame().hands().rightmost();
+				controlHand = input.getRightmostHand();
 
-				if (rightHand.isValid()) {
-					controlHand = rightHand;
-					controlHandId = controlHand.id();
+				if (controlHand >= 0) {
+					controlHandId = input.getHandId(controlHand);
+					controlHandFilter.reset();
 				}
 			}
 
-			if (controlHand.isValid() && controlHand.palmPosition().isValid()) {
+			if (controlHand >= 0 && input.isPalmValid(controlHand)) {
 				// Update the hand position if the hand is not closed
-				if (controlHand.fingers().count() > 1) {
-					controlHandPos = controlHand.palmPosition();
+				if (input.getFingerCount(controlHand) > 1) {
+					controlHandFilter.update(input.getPalmX(controlHand),
+							input.getPalmY(controlHand), input.getPalmZ(controlHand),
+							input.getTimestamp());
+					controlHandFilter.getPredictedPosition(controlHandPos);
 				}
 			}
 
@@ -181,39 +390,43 @@ public class allTogether extends OrientedApplet {
 				lightHandId = -1;
 			}
 
-			lightHand = leap.frame().hand(lightHandId);
+			lightHand = input.findHand(lightHandId);
 
-			if (!lightHand.isValid()) {
+			if (lightHand < 0) {
 				// Use the left most hand if it's available
-				Hand leftHand = leap.frame().hands().leftmost();
+				int leftHand = input.getLeftmostHand();
 
-				if (leftHand.isValid() && leftHand.id() != controlHandId) {
+				if (leftHand >= 0 && input.getHandId(leftHand) != controlHandId) {
 					lightHand = leftHand;
-					lightHandId = lightHand.id();
+					lightHandId = input.getHandId(lightHand);
+					lightHandFilter.reset();
 				} else {
 					// Loop over the hands and select the first that is available
-					HandList hands = leap.frame().hands();
-
-					for (int i = 0; i < hands.count(); i++) {
-						Hand hand = hands.get(i);
-
-						if (hand.isValid() && hand.id() != controlHandId) {
-							lightHand = hand;
-							lightHandId = hand.id();
+					for (int i = 0; i < input.getHandCount(); i++) {
+						if (input.getHandId(i) != controlHandId) {
+							lightHand = i;
+							lightHandId = input.getHandId(i);
+							lightHandFilter.reset();
 							break;
 						}
 					}
 				}
 			}
 
-			if (lightHand.isValid() && lightHand.fingers().count() > 0) {
-				lightHandPos = lightHand.fingers().frontmost().tipPosition();
+			if (lightHand >= 0 && input.isTipValid(lightHand)) {
+				lightHandFilter.update(input.getTipX(lightHand), input.getTipY(lightHand),
+						input.getTipZ(lightHand), input.getTimestamp());
+				lightHandFilter.getPredictedPosition(lightHandPos);
 			}
 
+			profiler.end(leapPhase);
+
 			if (layer == 0 || layer == 1) {
+				profiler.begin(modelPhase);
+
 				// Set the illumination
-				float dirY = -(lightHandPos.getY() - 150f) / 100f;
-				float dirX = (lightHandPos.getX() + 50f) / 100f;
+				float dirY = -(lightHandPos.y - 150f) / 100f;
+				float dirX = (lightHandPos.x + 50f) / 100f;
 				directionalLight(255, 255, 255, -dirX, -dirY, -1);
 
 				// Draw the model
@@ -222,67 +435,87 @@ public class allTogether extends OrientedApplet {
 				fill(255);
 				noStroke();
 				translate(width / 2f, height / 2f);
-				rotateX(PI * (controlHandPos.getY() - 150f) / 150f);
-				rotateY(-HALF_PI + PI * controlHandPos.getX() / 150f);
-				scale(130f / (130f + max(controlHandPos.getZ(), -130)));
-				model.draw();
+				rotateX(PI * (controlHandPos.y - 150f) / 150f);
+				rotateY(-HALF_PI + PI * controlHandPos.x / 150f);
+				scale(130f / (130f + max(controlHandPos.z, -130)));
+
+				if (layer == 0) {
+					herschel.draw(this);
+				} else {
+					itokawa.draw(this);
+				}
+
 				popStyle();
 				popMatrix();
+				profiler.end(modelPhase);
 			} else {
 				// Calculate the rotation angles and zoom factor
-				xAng = 1.5f * HALF_PI * (controlHandPos.getY() - 150f) / 150f;
-				yAng = -HALF_PI + 1.5f * HALF_PI * controlHandPos.getX() / 150f;
-				zoom = 75f / (75f + max(controlHandPos.getZ(), -70f));
+				xAng = 1.5f * HALF_PI * (controlHandPos.y - 150f) / 150f;
+				yAng = -HALF_PI + 1.5f * HALF_PI * controlHandPos.x / 150f;
+				zoom = 75f / (75f + max(controlHandPos.z, -70f));
 
 				// Update the stellar coordinates
+				profiler.begin(physicsPhase);
+				gcStarOrbits.update(timeStep, nSteps);
+				gcStarProjector.update(g);
+				profiler.end(physicsPhase);
+
+				profiler.begin(starsPhase);
+
 				for (int s = 0; s < gcStars.length; s++) {
-					gcStars[s].update(timeStep, nSteps);
+					gcStars[s].update();
 				}
 
+				profiler.end(starsPhase);
+
 				// Trick to deal with transparent images:
 				// Order the stars according to their z position and draw first those that are more distant
-				boolean gcBHDrawn = false;
-				boolean[] gcStarDrawn = new boolean[gcStars.length];
-				int starCounter = 0;
+				profiler.begin(sortPhase);
+				int[] starOrder = gcStarSorter.sort(gcStars);
+				profiler.end(sortPhase);
+
+				profiler.begin(drawPhase);
 
-				while (starCounter < gcStars.length) {
-					// Select the most distant star in this iteration
-					float minZValue = Float.MAX_VALUE;
-					int starIndex = -1;
+				if (gcStarField != null && gcStarField.isAvailable()) {
+					// Draw all the stars and the black hole in one call
+					gcStarField.draw(gcStars, starOrder, gcBH);
+				} else {
+					float bhZ = gcBH.getPos().z;
+					boolean gcBHDrawn = false;
 
 					for (int i = 0; i < gcStars.length; i++) {
-						if (!gcStarDrawn[i] && gcStars[i].getScreenPos().z < minZValue) {
-							minZValue = gcStars[i].getScreenPos().z;
-							starIndex = i;
+						Star star = gcStars[starOrder[i]];
+
+						// Check if the black hole needs to be drawn
+						if (star.getScreenPos().z > bhZ && !gcBHDrawn) {
+							gcBH.draw(this);
+							gcBHDrawn = true;
 						}
-					}
 
-					// Check if the black hole needs to be drawn
-					if (minZValue > gcBH.getPos().z && !gcBHDrawn) {
-						gcBH.draw();
-						gcBHDrawn = true;
+						// Draw the star
+						star.draw(this);
 					}
-
-					// Draw the star
-					gcStars[starIndex].draw();
-					gcStarDrawn[starIndex] = true;
-					starCounter++;
 				}
 
+				profiler.end(drawPhase);
+
 				// Draw the stellar trails
-				if (lightHand.isValid()) {
+				if (lightHand >= 0) {
+					profiler.begin(trailsPhase);
 					hint(DISABLE_DEPTH_TEST);
 
 					for (int i = 0; i < gcStars.length; i++) {
-						gcStars[i].drawTrail();
+						gcStars[i].drawTrail(this);
 					}
 
 					hint(ENABLE_DEPTH_TEST);
+					profiler.end(trailsPhase);
 				}
 			}
 		}
 
 		// Draw the text information
+		profiler.begin(textPhase);
 		hint(DISABLE_DEPTH_TEST);
 		pushStyle();
 		noLights();
@@ -364,16 +597,13 @@ public class allTogether extends OrientedApplet {
 		// image(imgCircle, 100,400);
 		popStyle();
 		hint(ENABLE_DEPTH_TEST);
+		profiler.end(textPhase);
+
+		profiler.endFrame();
+		profiler.drawOverlay();
 	}
 	
 	public void mouseClicked(){
 		layer = (layer + 1) % 3;
-
-		if (layer == 0) {
-			model = herschel;
-		} else if (layer == 1) {
-			model = itokawa;
-		}
-	
 	}
 }
@@ -0,0 +1,77 @@
+#ifdef GL_ES
+precision mediump float;
+precision mediump int;
+#endif
+
+#define TWO_PI 6.28318530718
+
+uniform float starRadius;
+
+varying float kind;
+varying float phase;
+
+float hash(vec2 p) {
+  return fract(sin(dot(p, vec2(127.1, 311.7))) * 43758.5453);
+}
+
+float valueNoise(vec2 p) {
+  vec2 i = floor(p);
+  vec2 f = fract(p);
+  f = f * f * (3.0 - 2.0 * f);
+  return mix(mix(hash(i), hash(i + vec2(1.0, 0.0)), f.x),
+             mix(hash(i + vec2(0.0, 1.0)), hash(i + vec2(1.0, 1.0)), f.x), f.y);
+}
+
+// Four octaves with half the amplitude each, like Processing's noise().
+// The hash is not Processing's, so the flares only look alike, they are not
+// the same as the flares of the star sprites
+float fractalNoise(vec2 p) {
+  float sum = 0.0;
+  float amp = 0.5;
+
+  for (int i = 0; i < 4; i++) {
+    sum += amp * valueNoise(p);
+    p *= 2.0;
+    amp *= 0.5;
+  }
+
+  return sum;
+}
+
+void main() {
+  vec2 coord = 2.0 * gl_PointCoord - 1.0;
+
+  if (kind < 0.5) {
+    // Star: the sprite extends three radii from the center
+    float relDist = 3.0 * length(coord);
+    float relDistSq = relDist * relDist;
+    float grey = max(0.0, 1.0 - relDistSq);
+    float alpha = clamp(1.2 - relDistSq, 0.0, 1.0);
+
+    // Flares, animated with the star noise seed
+    float dist = relDist * starRadius;
+    float column = 3.0 * starRadius * (coord.x + 1.0);
+    float ang = 3.0 * (atan(coord.y, coord.x) + fractalNoise(vec2(column, 0.0))) / TWO_PI;
+    float flare = fractalNoise(vec2(0.1 * (dist - phase), ang));
+    flare *= 1.0 - smoothstep(0.9 * starRadius - 2.0, 0.9 * starRadius + 2.0, dist);
+
+    // Blend the flares over the star gradient
+    float outAlpha = flare + alpha * (1.0 - flare);
+
+    if (outAlpha <= 0.0) {
+      discard;
+    }
+
+    float outGrey = (flare * flare + grey * alpha * (1.0 - flare)) / outAlpha;
+    gl_FragColor = vec4(vec3(outGrey), outAlpha);
+  } else {
+    // Black hole: the sprite extends two radii from the center
+    float alpha = clamp(1.3 - 2.0 * length(coord), 0.0, 1.0);
+
+    if (alpha <= 0.0) {
+      discard;
+    }
+
+    gl_FragColor = vec4(0.0, 0.0, 0.0, alpha);
+  }
+}
@@ -0,0 +1,19 @@
+// Draws every star and the black hole as a single point sprite
+
+uniform mat4 starTransform;
+uniform float pointScale;
+
+attribute vec3 starPosition;
+attribute vec3 starParams;
+
+varying float kind;
+varying float phase;
+
+void main() {
+  gl_Position = starTransform * vec4(starPosition, 1.0);
+
+  // The sprite size is given in model units, like the scaled images
+  gl_PointSize = starParams.x * pointScale / gl_Position.w;
+  kind = starParams.y;
+  phase = starParams.z;
+}
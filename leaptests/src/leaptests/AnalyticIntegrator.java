@@ -0,0 +1,6 @@
+package leaptests;
+
+public interface AnalyticIntegrator extends Integrator {
+	// Moves the star with the given index to its state at the given time
+	void propagate(OrbitEngine orbits, int index, double time);
+}
@@ -0,0 +1,44 @@
+package leaptests;
+
+import processing.core.PConstants;
+import processing.core.PImage;
+import processing.core.PVector;
+
+public class BlackHole implements PConstants {
+	private PVector pos;
+	private float mass;
+	private float radius;
+	private PImage img;
+
+	public BlackHole(PVector pos, float mass) {
+		this.pos = pos.get();
+		this.mass = mass;
+
+		// Get the image that will be used to draw the black hole
+		radius = 10;
+		img = SpriteCache.get(SpriteCache.Gradient.BLACK_HOLE, radius);
+	}
+
+	public void draw(OrientedApplet parent) {
+		parent.pushMatrix();
+		parent.pushStyle();
+		parent.imageMode(CENTER);
+		parent.translate(pos.x, pos.y, pos.z);
+		parent.scale(parent.getZoom());
+		parent.image(img, 0, 0);
+		parent.popStyle();
+		parent.popMatrix();
+	}
+
+	public PVector getPos() {
+		return pos.get();
+	}
+
+	public float getMass() {
+		return mass;
+	}
+
+	public float getRadius() {
+		return radius;
+	}
+}
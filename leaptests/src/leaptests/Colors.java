@@ -0,0 +1,26 @@
+package leaptests;
+
+public class Colors {
+	private Colors() {
+	}
+
+	public static int level(float value) {
+		// Same conversion as PApplet.color() with the default color mode, RGB
+		// with 255 levels, for the classes that don't have an applet
+		if (value > 255) {
+			value = 255;
+		}
+
+		if (value < 0) {
+			value = 0;
+		}
+
+		return (int) (value / 255 * 255);
+	}
+
+	public static int grey(float grey, float alpha) {
+		// Same result as PApplet.color(grey, alpha)
+		int g = level(grey);
+		return (level(alpha) << 24) | (g << 16) | (g << 8) | g;
+	}
+}
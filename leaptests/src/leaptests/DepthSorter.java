@@ -0,0 +1,97 @@
+package leaptests;
+
+import java.util.Arrays;
+
+public class DepthSorter {
+	// Beyond this average number of shifts per element, the insertion sort
+	// is abandoned and the keys are sorted from scratch
+	private static final int MAX_SHIFTS_PER_ELEMENT = 8;
+
+	private int[] order;
+	private float[] keys;
+	private long[] packedKeys;
+	private int n;
+
+	public DepthSorter() {
+		order = new int[0];
+		keys = new float[0];
+		packedKeys = new long[0];
+		n = 0;
+	}
+
+	public int[] sort(Star[] stars) {
+		if (keys.length < stars.length) {
+			keys = new float[stars.length];
+		}
+
+		for (int i = 0; i < stars.length; i++) {
+			keys[i] = stars[i].getScreenPos().z;
+		}
+
+		return sort(keys, stars.length);
+	}
+
+	public int[] sort(float[] zValues, int count) {
+		// Start from the identity order if the number of elements changed
+		if (count != n) {
+			if (order.length < count) {
+				order = new int[count];
+			}
+
+			for (int i = 0; i < count; i++) {
+				order[i] = i;
+			}
+
+			n = count;
+		}
+
+		// The order from the previous frame is usually almost right, so an
+		// insertion sort only needs a few shifts
+		long maxShifts = (long) MAX_SHIFTS_PER_ELEMENT * count;
+		long shifts = 0;
+
+		for (int i = 1; i < count; i++) {
+			int index = order[i];
+			float z = zValues[index];
+			int j = i - 1;
+
+			while (j >= 0 && zValues[order[j]] > z) {
+				order[j + 1] = order[j];
+				j--;
+			}
+
+			order[j + 1] = index;
+			shifts += i - 1 - j;
+
+			if (shifts > maxShifts) {
+				sortPacked(zValues, count);
+				break;
+			}
+		}
+
+		return order;
+	}
+
+	private void sortPacked(float[] zValues, int count) {
+		// Pack each key with its index in a long that sorts like the float
+		if (packedKeys.length < count) {
+			packedKeys = new long[count];
+		}
+
+		for (int i = 0; i < count; i++) {
+			int bits = Float.floatToIntBits(zValues[i]);
+			bits ^= (bits >> 31) & 0x7fffffff;
+			packedKeys[i] = ((long) bits << 32) | i;
+		}
+
+		Arrays.sort(packedKeys, 0, count);
+
+		for (int i = 0; i < count; i++) {
+			order[i] = (int) packedKeys[i];
+		}
+	}
+
+	public int[] getOrder() {
+		return order;
+	}
+}
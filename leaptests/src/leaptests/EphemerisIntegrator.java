@@ -0,0 +1,36 @@
+package leaptests;
+
+public class EphemerisIntegrator implements AnalyticIntegrator {
+	private OrbitEphemeris ephemeris;
+	private Integrator fallback;
+
+	public EphemerisIntegrator(OrbitEphemeris ephemeris, Integrator fallback) {
+		this.ephemeris = ephemeris;
+		this.fallback = fallback;
+	}
+
+	public void advance(OrbitEngine orbits, int index, float dt,
+			int iterations) {
+		// Use the fallback integrator until the ephemeris is ready
+		if (ephemeris.isReady()) {
+			ephemeris.interpolate(orbits, index, orbits.getTime() + (double) dt
+					* iterations);
+		} else {
+			fallback.advance(orbits, index, dt, iterations);
+		}
+	}
+
+	public void propagate(OrbitEngine orbits, int index, double time) {
+		if (ephemeris.isReady()) {
+			ephemeris.interpolate(orbits, index, time);
+		} else if (fallback instanceof AnalyticIntegrator) {
+			((AnalyticIntegrator) fallback).propagate(orbits, index, time);
+		} else {
+			throw new IllegalStateException("The ephemeris is not ready yet");
+		}
+	}
+
+	public OrbitEphemeris getEphemeris() {
+		return ephemeris;
+	}
+}
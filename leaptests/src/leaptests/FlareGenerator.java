@@ -0,0 +1,173 @@
+package leaptests;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import processing.core.PApplet;
+import processing.core.PConstants;
+import processing.core.PImage;
+
+public class FlareGenerator implements PConstants {
+	// Half size of the box blur kernel
+	private static final int BLUR = 2;
+	private static final int BLUR_AREA = (2 * BLUR + 1) * (2 * BLUR + 1);
+
+	// Grey level of each possible sum of the blur kernel. The flares used to
+	// be painted with color(), which converts the floats in its own way, and
+	// the images have to stay the same
+	private static final int[] BLUR_LEVELS = new int[255 * BLUR_AREA + 1];
+
+	static {
+		for (int sum = 0; sum < BLUR_LEVELS.length; sum++) {
+			BLUR_LEVELS[sum] = Colors.level(sum / (float) BLUR_AREA);
+		}
+	}
+
+	// The generators are shared by the stars with the same noise source and
+	// image size
+	private static Map<NoiseSource, Map<String, FlareGenerator>> generators
+			= new IdentityHashMap<NoiseSource, Map<String, FlareGenerator>>();
+
+	private NoiseSource noise;
+	private int width;
+	private int height;
+	private int[] insideIndex;
+	private float[] insideDist;
+	private float[] insideAng;
+
+	private FlareGenerator(NoiseSource noise, int width, int height,
+			float radius) {
+		this.noise = noise;
+		this.width = width;
+		this.height = height;
+
+		// Save the polar coordinates of the pixels inside the flares region.
+		// They are the same for all the stars with the same image size
+		int nInside = 0;
+		int[] index = new int[width * height];
+		float[] dist = new float[width * height];
+		float[] ang = new float[width * height];
+
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				float d = PApplet.sqrt(PApplet.sq(x - width / 2f)
+						+ PApplet.sq(y - height / 2f));
+
+				if (d < 0.9 * radius) {
+					float relAng = (PApplet.atan2((float) (y - height / 2f),
+							(float) (x - width / 2f)) + noise.noise(x))
+							/ TWO_PI;
+					index[nInside] = x + y * width;
+					dist[nInside] = d;
+					ang[nInside] = 3 * relAng;
+					nInside++;
+				}
+			}
+		}
+
+		insideIndex = new int[nInside];
+		insideDist = new float[nInside];
+		insideAng = new float[nInside];
+		System.arraycopy(index, 0, insideIndex, 0, nInside);
+		System.arraycopy(dist, 0, insideDist, 0, nInside);
+		System.arraycopy(ang, 0, insideAng, 0, nInside);
+	}
+
+	public static synchronized FlareGenerator get(NoiseSource noise,
+			int width, int height, float radius) {
+		Map<String, FlareGenerator> sizes = generators.get(noise);
+
+		if (sizes == null) {
+			sizes = new HashMap<String, FlareGenerator>();
+			generators.put(noise, sizes);
+		}
+
+		String key = width + "x" + height + "r" + radius;
+		FlareGenerator generator = sizes.get(key);
+
+		if (generator == null) {
+			generator = new FlareGenerator(noise, width, height, radius);
+			sizes.put(key, generator);
+		}
+
+		return generator;
+	}
+
+	public int[] createBuffer() {
+		// The first half keeps the grey levels and the second half is the
+		// blur scratch. The generator is shared, so each caller needs its
+		// own scratch to be able to update from several threads
+		return new int[2 * width * height];
+	}
+
+	public void update(int[] grey, float noiseSeed, PImage flaresImg) {
+		int n = width * height;
+
+		// The grey buffer keeps the flares from the previous frame outside
+		// the flares region. Paint the new flares inside it
+		for (int k = 0; k < insideIndex.length; k++) {
+			grey[insideIndex[k]] = Colors.level(255 * noise.noise(
+					0.1f * (insideDist[k] - noiseSeed), insideAng[k]));
+		}
+
+		// Blur the image with a running sum box filter, first along the rows
+		int size = 2 * BLUR + 1;
+
+		for (int y = 0; y < height; y++) {
+			int row = y * width;
+			int sum = 0;
+
+			for (int x = 0; x < size - 1; x++) {
+				sum += grey[row + x];
+			}
+
+			for (int x = BLUR; x < width - BLUR; x++) {
+				sum += grey[row + x + BLUR];
+				grey[n + row + x] = sum;
+				sum -= grey[row + x - BLUR];
+			}
+		}
+
+		// And then along the columns. The grey levels are not read anymore,
+		// so the result can be written on them
+		for (int x = BLUR; x < width - BLUR; x++) {
+			int sum = 0;
+
+			for (int y = 0; y < size - 1; y++) {
+				sum += grey[n + x + y * width];
+			}
+
+			for (int y = BLUR; y < height - BLUR; y++) {
+				sum += grey[n + x + (y + BLUR) * width];
+				grey[x + y * width] = BLUR_LEVELS[sum];
+				sum -= grey[n + x + (y - BLUR) * width];
+			}
+		}
+
+		// The blurred image has empty borders
+		for (int y = 0; y < height; y++) {
+			int row = y * width;
+
+			if (y < BLUR || y >= height - BLUR) {
+				Arrays.fill(grey, row, row + width, 0);
+			} else {
+				for (int x = 0; x < BLUR; x++) {
+					grey[row + x] = 0;
+					grey[row + width - 1 - x] = 0;
+				}
+			}
+		}
+
+		// Copy the result to the image, using the grey level as alpha
+		flaresImg.loadPixels();
+		int[] pixels = flaresImg.pixels;
+
+		for (int i = 0; i < n; i++) {
+			int g = grey[i];
+			pixels[i] = (g << 24) | (g << 16) | (g << 8) | g;
+		}
+
+		flaresImg.updatePixels();
+	}
+}
@@ -0,0 +1,246 @@
+package leaptests;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import processing.core.PApplet;
+import processing.core.PConstants;
+import processing.event.KeyEvent;
+
+public class FrameProfiler implements PConstants {
+	// Number of frames kept for each phase
+	private static final int HISTORY = 300;
+
+	// The first phase is always the time between consecutive frames
+	private static final int FRAME = 0;
+
+	private PApplet parent;
+	private String[] names;
+	private int nPhases;
+	private long[] startTimes;
+	private long[] frameTimes;
+	private long[][] samples;
+	private long[] sorted;
+	private int head;
+	private int nFrames;
+	private long lastFrameStart;
+	private boolean enabled;
+	private boolean overlayVisible;
+
+	public FrameProfiler(PApplet parent) {
+		this.parent = parent;
+		names = new String[8];
+		nPhases = 0;
+		startTimes = new long[8];
+		frameTimes = new long[8];
+		samples = new long[8][];
+		sorted = new long[HISTORY];
+		enabled = false;
+		overlayVisible = true;
+		addPhase("frame");
+		reset();
+
+		// Listen to the keys that control the profiler
+		parent.registerMethod("keyEvent", this);
+	}
+
+	public int addPhase(String name) {
+		if (nPhases == names.length) {
+			names = Arrays.copyOf(names, 2 * nPhases);
+			startTimes = Arrays.copyOf(startTimes, 2 * nPhases);
+			frameTimes = Arrays.copyOf(frameTimes, 2 * nPhases);
+			samples = Arrays.copyOf(samples, 2 * nPhases);
+		}
+
+		names[nPhases] = name;
+		samples[nPhases] = new long[HISTORY];
+		nPhases++;
+
+		return nPhases - 1;
+	}
+
+	public void reset() {
+		for (int i = 0; i < nPhases; i++) {
+			Arrays.fill(samples[i], 0);
+			frameTimes[i] = 0;
+		}
+
+		head = 0;
+		nFrames = 0;
+		lastFrameStart = 0;
+	}
+
+	public void beginFrame() {
+		if (!enabled) {
+			return;
+		}
+
+		long now = System.nanoTime();
+
+		if (lastFrameStart != 0) {
+			frameTimes[FRAME] = now - lastFrameStart;
+		}
+
+		lastFrameStart = now;
+	}
+
+	public void begin(int phase) {
+		if (enabled) {
+			startTimes[phase] = System.nanoTime();
+		}
+	}
+
+	public void end(int phase) {
+		// Phases can run several times in a frame, so the times add up
+		if (enabled) {
+			frameTimes[phase] += System.nanoTime() - startTimes[phase];
+		}
+	}
+
+	public void endFrame() {
+		if (!enabled) {
+			return;
+		}
+
+		// Save the frame in the ring buffers. The first frame after enabling
+		// the profiler is incomplete, and it's discarded
+		if (frameTimes[FRAME] > 0) {
+			for (int i = 0; i < nPhases; i++) {
+				samples[i][head] = frameTimes[i];
+			}
+
+			head = (head + 1) % HISTORY;
+			nFrames = Math.min(nFrames + 1, HISTORY);
+		}
+
+		Arrays.fill(frameTimes, 0);
+	}
+
+	public float getPercentile(int phase, float percentile) {
+		if (nFrames == 0) {
+			return 0;
+		}
+
+		// Nearest rank percentile of the saved frames, in milliseconds
+		System.arraycopy(samples[phase], 0, sorted, 0, nFrames);
+		Arrays.sort(sorted, 0, nFrames);
+		int rank = (int) Math.ceil(percentile / 100 * nFrames) - 1;
+		return sorted[Math.max(0, Math.min(nFrames - 1, rank))] / 1e6f;
+	}
+
+	public void drawOverlay() {
+		if (!enabled || !overlayVisible) {
+			return;
+		}
+
+		float x = parent.width - 260;
+		float y = 30;
+
+		parent.hint(DISABLE_DEPTH_TEST);
+		parent.pushStyle();
+		parent.pushMatrix();
+		parent.noLights();
+		parent.noStroke();
+		parent.fill(0, 180);
+		parent.rect(x - 10, y - 20, 260, 20 * (nPhases + 1) + 10);
+		parent.textSize(14);
+		parent.textAlign(LEFT);
+		parent.fill(255);
+		parent.text("phase", x, y);
+		parent.textAlign(RIGHT);
+		parent.text("p50 ms", x + 160, y);
+		parent.text("p99 ms", x + 240, y);
+
+		for (int i = 0; i < nPhases; i++) {
+			y += 20;
+			parent.textAlign(LEFT);
+			parent.text(names[i], x, y);
+			parent.textAlign(RIGHT);
+			parent.text(PApplet.nf(getPercentile(i, 50), 1, 2), x + 160, y);
+			parent.text(PApplet.nf(getPercentile(i, 99), 1, 2), x + 240, y);
+		}
+
+		parent.popMatrix();
+		parent.popStyle();
+		parent.hint(ENABLE_DEPTH_TEST);
+	}
+
+	public String exportCsv() {
+		String fileName = "profile-" + PApplet.year()
+				+ PApplet.nf(PApplet.month(), 2) + PApplet.nf(PApplet.day(), 2)
+				+ "-" + PApplet.nf(PApplet.hour(), 2)
+				+ PApplet.nf(PApplet.minute(), 2)
+				+ PApplet.nf(PApplet.second(), 2) + ".csv";
+		exportCsv(fileName);
+		return fileName;
+	}
+
+	public void exportCsv(String fileName) {
+		PrintWriter writer = parent.createWriter(fileName);
+
+		// One row per frame, from the oldest to the newest, in milliseconds
+		StringBuilder line = new StringBuilder();
+
+		for (int i = 0; i < nPhases; i++) {
+			line.append(i == 0 ? "" : ",").append(names[i]);
+		}
+
+		writer.println(line);
+
+		for (int f = 0; f < nFrames; f++) {
+			int index = (head - nFrames + f + HISTORY) % HISTORY;
+			line.setLength(0);
+
+			for (int i = 0; i < nPhases; i++) {
+				line.append(i == 0 ? "" : ",").append(samples[i][index] / 1e6);
+			}
+
+			writer.println(line);
+		}
+
+		writer.flush();
+		writer.close();
+	}
+
+	public void keyEvent(KeyEvent event) {
+		if (event.getAction() != KeyEvent.PRESS) {
+			return;
+		}
+
+		switch (event.getKey()) {
+		case 'p':
+			// Start or stop the profiling
+			setEnabled(!enabled);
+			break;
+		case 'o':
+			overlayVisible = !overlayVisible;
+			break;
+		case 'x':
+			if (nFrames > 0) {
+				PApplet.println("Frame profile saved in " + exportCsv());
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	public void setEnabled(boolean enabled) {
+		if (enabled && !this.enabled) {
+			reset();
+		}
+
+		this.enabled = enabled;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setOverlayVisible(boolean visible) {
+		overlayVisible = visible;
+	}
+
+	public int getFrameCount() {
+		return nFrames;
+	}
+}
@@ -0,0 +1,17 @@
+package leaptests;
+
+public class GestureAdapter implements GestureListener {
+	// Empty methods, so the listeners only need to implement the gestures
+	// they use
+	public void circleCompleted(LeapGesture circle) {
+	}
+
+	public void swiped(LeapGesture swipe) {
+	}
+
+	public void keyTapped(LeapGesture keyTap) {
+	}
+
+	public void screenTapped(LeapGesture screenTap) {
+	}
+}
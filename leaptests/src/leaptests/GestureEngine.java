@@ -0,0 +1,172 @@
+package leaptests;
+
+import java.util.ArrayList;
+import com.leapmotion.leap.Gesture;
+
+public class GestureEngine {
+	// Number of gestures followed at the same time
+	private static final int N_SLOTS = 16;
+
+	// Gestures not updated for this time are forgotten, in case the Leap
+	// frame with the stop state was skipped
+	private static final long STALE_TIME = 1000;
+
+	private static final int N_TYPES = Gesture.Type.values().length;
+
+	// One slot per Leap gesture id, so each gesture fires at most once
+	private int[] slotIds;
+	private long[] slotTimes;
+	private boolean[] slotFired;
+
+	private float circleMinProgress;
+	private float circleMaxRadius;
+	private float swipeMinSpeed;
+	private long[] cooldowns;
+	private long[] lastEventTimes;
+
+	private ArrayList<GestureListener> listeners;
+	private LeapGesture gesture;
+
+	public GestureEngine() {
+		slotIds = new int[N_SLOTS];
+		slotTimes = new long[N_SLOTS];
+		slotFired = new boolean[N_SLOTS];
+
+		for (int i = 0; i < N_SLOTS; i++) {
+			slotIds[i] = -1;
+		}
+
+		// The thresholds used by the sketches
+		circleMinProgress = 1;
+		circleMaxRadius = 30;
+		swipeMinSpeed = 0;
+		cooldowns = new long[N_TYPES];
+		lastEventTimes = new long[N_TYPES];
+		cooldowns[Gesture.Type.TYPE_CIRCLE.ordinal()] = 3000;
+
+		for (int i = 0; i < N_TYPES; i++) {
+			lastEventTimes[i] = Long.MIN_VALUE / 2;
+		}
+
+		listeners = new ArrayList<GestureListener>();
+		gesture = new LeapGesture();
+	}
+
+	public void addListener(GestureListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(GestureListener listener) {
+		listeners.remove(listener);
+	}
+
+	public void update(LeapInput input) {
+		// Process the gestures received since the last call. The listeners
+		// are called from this thread. Call it every frame, so the events
+		// are not delayed
+		while (input.pollGesture(gesture)) {
+			process(gesture, gesture.getReceivedTime());
+		}
+	}
+
+	public void process(LeapGesture gesture, long time) {
+		// The time is in milliseconds
+		int slot = findSlot(gesture.getId(), time);
+		slotTimes[slot] = time;
+
+		// A gesture that arrives during the cooldown time can still fire
+		// later, if it continues after the cooldown
+		int type = gesture.getType().ordinal();
+
+		if (!slotFired[slot] && passes(gesture)
+				&& time - lastEventTimes[type] > cooldowns[type]) {
+			slotFired[slot] = true;
+			lastEventTimes[type] = time;
+			dispatch(gesture);
+		}
+
+		if (gesture.getState() == Gesture.State.STATE_STOP) {
+			slotIds[slot] = -1;
+		}
+	}
+
+	private int findSlot(int id, long time) {
+		int free = -1;
+		int oldest = 0;
+
+		for (int i = 0; i < N_SLOTS; i++) {
+			if (slotIds[i] == id) {
+				return i;
+			} else if (slotIds[i] < 0 || time - slotTimes[i] > STALE_TIME) {
+				free = free < 0 ? i : free;
+			} else if (slotTimes[i] < slotTimes[oldest]) {
+				oldest = i;
+			}
+		}
+
+		// Reuse the gesture not updated for the longest time if all the
+		// slots are in use
+		int slot = free >= 0 ? free : oldest;
+		slotIds[slot] = id;
+		slotFired[slot] = false;
+		return slot;
+	}
+
+	private boolean passes(LeapGesture gesture) {
+		switch (gesture.getType()) {
+		case TYPE_CIRCLE:
+			return gesture.getProgress() > circleMinProgress
+					&& gesture.getRadius() < circleMaxRadius;
+		case TYPE_SWIPE:
+			return gesture.getSpeed() >= swipeMinSpeed;
+		case TYPE_KEY_TAP:
+		case TYPE_SCREEN_TAP:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private void dispatch(LeapGesture gesture) {
+		for (int i = 0; i < listeners.size(); i++) {
+			GestureListener listener = listeners.get(i);
+
+			switch (gesture.getType()) {
+			case TYPE_CIRCLE:
+				listener.circleCompleted(gesture);
+				break;
+			case TYPE_SWIPE:
+				listener.swiped(gesture);
+				break;
+			case TYPE_KEY_TAP:
+				listener.keyTapped(gesture);
+				break;
+			case TYPE_SCREEN_TAP:
+				listener.screenTapped(gesture);
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	public void setCircleThresholds(float minProgress, float maxRadius) {
+		// The progress is in turns, and the radius in millimeters
+		circleMinProgress = minProgress;
+		circleMaxRadius = maxRadius;
+	}
+
+	public void setSwipeMinSpeed(float minSpeed) {
+		// In millimeters per second
+		swipeMinSpeed = minSpeed;
+	}
+
+	public void setCooldown(Gesture.Type type, long cooldown) {
+		// Minimum time between two events of the same type, in milliseconds
+		cooldowns[type.ordinal()] = cooldown;
+	}
+
+	public long getCooldown(Gesture.Type type) {
+		return cooldowns[type.ordinal()];
+	}
+}
@@ -0,0 +1,14 @@
+package leaptests;
+
+public interface GestureListener {
+	// Each method is called once per Leap gesture, when the gesture passes
+	// the GestureEngine thresholds. The gesture object is reused after the
+	// call, so copy it to keep it
+	void circleCompleted(LeapGesture circle);
+
+	void swiped(LeapGesture swipe);
+
+	void keyTapped(LeapGesture keyTap);
+
+	void screenTapped(LeapGesture screenTap);
+}
@@ -0,0 +1,79 @@
+package leaptests;
+
+import processing.core.PVector;
+
+public class HandFilter {
+	// Default One Euro parameters for the palm positions, in mm and seconds
+	public static final float MIN_CUTOFF = 1;
+	public static final float BETA = 0.1f;
+	public static final float DERIVATIVE_CUTOFF = 1;
+
+	// The positions are extrapolated a fixed time after the Leap frame,
+	// about two frames at 60 fps. It's an estimate of the time until the
+	// frame is displayed, which is not measured
+	public static final float PREDICTION_TIME = 0.035f;
+
+	private OneEuroFilter filterX;
+	private OneEuroFilter filterY;
+	private OneEuroFilter filterZ;
+	private long lastTimestamp;
+	private float predictionTime;
+
+	public HandFilter() {
+		this(MIN_CUTOFF, BETA, DERIVATIVE_CUTOFF, PREDICTION_TIME);
+	}
+
+	public HandFilter(float minCutoff, float beta, float derivativeCutoff,
+			float predictionTime) {
+		filterX = new OneEuroFilter(minCutoff, beta, derivativeCutoff);
+		filterY = new OneEuroFilter(minCutoff, beta, derivativeCutoff);
+		filterZ = new OneEuroFilter(minCutoff, beta, derivativeCutoff);
+		this.predictionTime = predictionTime;
+		reset();
+	}
+
+	public void reset() {
+		// Call it when the tracked hand changes, so the filter doesn't
+		// smooth the jump between the two hands
+		filterX.reset();
+		filterY.reset();
+		filterZ.reset();
+		lastTimestamp = -1;
+	}
+
+	public void update(float x, float y, float z, long timestamp) {
+		// The Leap timestamps are in microseconds. The same frame can be
+		// seen more than once if the applet runs faster than the device
+		if (timestamp == lastTimestamp) {
+			return;
+		}
+
+		float dt = lastTimestamp >= 0 ? (timestamp - lastTimestamp) / 1e6f : 0;
+		filterX.filter(x, dt);
+		filterY.filter(y, dt);
+		filterZ.filter(z, dt);
+		lastTimestamp = timestamp;
+	}
+
+	public void getPosition(PVector target) {
+		target.set(filterX.getValue(), filterY.getValue(), filterZ.getValue());
+	}
+
+	public void getPredictedPosition(PVector target) {
+		// Where the hand should be when the frame reaches the screen
+		target.set(filterX.predict(predictionTime),
+				filterY.predict(predictionTime), filterZ.predict(predictionTime));
+	}
+
+	public boolean isInitialized() {
+		return filterX.isInitialized();
+	}
+
+	public void setPredictionTime(float predictionTime) {
+		this.predictionTime = predictionTime;
+	}
+
+	public float getPredictionTime() {
+		return predictionTime;
+	}
+}
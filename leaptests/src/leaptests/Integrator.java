@@ -0,0 +1,6 @@
+package leaptests;
+
+public interface Integrator {
+	// Advances the star with the given index during dt * iterations
+	void advance(OrbitEngine orbits, int index, float dt, int iterations);
+}
@@ -0,0 +1,177 @@
+package leaptests;
+
+public class KeplerIntegrator implements AnalyticIntegrator {
+	// Number of values saved per star: the epoch, the position and velocity
+	// at the epoch, the semi-major axis, the mean motion, the distance and
+	// the radial velocity term r0 * v0 / sqrt(GM)
+	private static final int STRIDE = 11;
+	private static final int MAX_ITERATIONS = 50;
+	private static final float STEP_FACTOR = 0.02f;
+
+	private double[] elements;
+	private boolean[] bound;
+	private boolean[] initialized;
+	private Integrator fallback;
+	private Integrator seekFallback;
+
+	public KeplerIntegrator(int capacity) {
+		elements = new double[STRIDE * capacity];
+		bound = new boolean[capacity];
+		initialized = new boolean[capacity];
+
+		// Unbound stars have no closed orbit and are integrated numerically
+		fallback = SymplecticIntegrator.yoshida().adaptive(STEP_FACTOR, 1000);
+		seekFallback = SymplecticIntegrator.yoshida();
+	}
+
+	public void advance(OrbitEngine orbits, int index, float dt,
+			int iterations) {
+		double time = orbits.getTime() + (double) dt * iterations;
+
+		if (!initialized[index]) {
+			initialize(orbits, index);
+		}
+
+		if (bound[index]) {
+			propagate(orbits, index, time);
+		} else {
+			fallback.advance(orbits, index, dt, iterations);
+		}
+	}
+
+	public void propagate(OrbitEngine orbits, int index, double time) {
+		if (!initialized[index]) {
+			initialize(orbits, index);
+		}
+
+		int offset = STRIDE * index;
+		double epoch = elements[offset];
+		double x0 = elements[offset + 1];
+		double y0 = elements[offset + 2];
+		double z0 = elements[offset + 3];
+		double vx0 = elements[offset + 4];
+		double vy0 = elements[offset + 5];
+		double vz0 = elements[offset + 6];
+		double a = elements[offset + 7];
+		double n = elements[offset + 8];
+		double r0 = elements[offset + 9];
+		double sigma0 = elements[offset + 10];
+
+		if (!bound[index]) {
+			// Start again from the epoch and integrate up to the given time,
+			// forwards or backwards, with a fixed step based on the orbital
+			// time scale at the epoch
+			double dt = time - epoch;
+			double step = STEP_FACTOR
+					* Math.sqrt(r0 * r0 * r0 / orbits.getMass());
+			int iterations = (int) Math.ceil(Math.abs(dt) / step) + 1;
+			orbits.x[index] = x0;
+			orbits.y[index] = y0;
+			orbits.z[index] = z0;
+			orbits.vx[index] = vx0;
+			orbits.vy[index] = vy0;
+			orbits.vz[index] = vz0;
+			seekFallback.advance(orbits, index, (float) (dt / iterations),
+					iterations);
+			return;
+		}
+
+		// Only the time within the current period matters
+		double dt = Math.IEEEremainder(time - epoch, 2 * Math.PI / n);
+
+		// Solve Kepler's equation for the change in eccentric anomaly:
+		// n dt = dE + sigma0 / sqrt(a) (1 - cos dE) - (1 - r0 / a) sin dE
+		double sqrtA = Math.sqrt(a);
+		double c1 = sigma0 / sqrtA;
+		double c2 = 1 - r0 / a;
+		double meanAnomaly = n * dt;
+		double dE = meanAnomaly;
+		double dELow = meanAnomaly - 2;
+		double dEHigh = meanAnomaly + 2;
+
+		for (int i = 0; i < MAX_ITERATIONS; i++) {
+			double sinDE = Math.sin(dE);
+			double cosDE = Math.cos(dE);
+			double f = dE + c1 * (1 - cosDE) - c2 * sinDE - meanAnomaly;
+			double df = 1 + c1 * sinDE - c2 * cosDE;
+
+			// The function is monotonic, so we can keep a bracket and fall
+			// back to bisection when the Newton step leaves it
+			if (f > 0) {
+				dEHigh = dE;
+			} else {
+				dELow = dE;
+			}
+
+			double newDE = dE - f / df;
+
+			if (newDE <= dELow || newDE >= dEHigh) {
+				newDE = (dELow + dEHigh) / 2;
+			}
+
+			if (Math.abs(newDE - dE) < 1e-13) {
+				dE = newDE;
+				break;
+			}
+
+			dE = newDE;
+		}
+
+		// Use the Lagrange f and g functions to get the new state
+		double sinDE = Math.sin(dE);
+		double cosDE = Math.cos(dE);
+		double r = a + (r0 - a) * cosDE + sigma0 * sqrtA * sinDE;
+		double f = 1 - a / r0 * (1 - cosDE);
+		double g = dt - (dE - sinDE) / n;
+		double fDot = -n * a * a * sinDE / (r * r0);
+		double gDot = 1 - a / r * (1 - cosDE);
+
+		orbits.x[index] = f * x0 + g * vx0;
+		orbits.y[index] = f * y0 + g * vy0;
+		orbits.z[index] = f * z0 + g * vz0;
+		orbits.vx[index] = fDot * x0 + gDot * vx0;
+		orbits.vy[index] = fDot * y0 + gDot * vy0;
+		orbits.vz[index] = fDot * z0 + gDot * vz0;
+	}
+
+	private void initialize(OrbitEngine orbits, int index) {
+		// Use the current state as the epoch for the orbital elements
+		double mass = orbits.getMass();
+		double x0 = orbits.x[index];
+		double y0 = orbits.y[index];
+		double z0 = orbits.z[index];
+		double vx0 = orbits.vx[index];
+		double vy0 = orbits.vy[index];
+		double vz0 = orbits.vz[index];
+		double r0 = Math.sqrt(x0 * x0 + y0 * y0 + z0 * z0);
+		double vSq = vx0 * vx0 + vy0 * vy0 + vz0 * vz0;
+		double inverseA = 2 / r0 - vSq / mass;
+
+		int offset = STRIDE * index;
+		elements[offset] = orbits.getTime();
+		elements[offset + 1] = x0;
+		elements[offset + 2] = y0;
+		elements[offset + 3] = z0;
+		elements[offset + 4] = vx0;
+		elements[offset + 5] = vy0;
+		elements[offset + 6] = vz0;
+		elements[offset + 9] = r0;
+		elements[offset + 10] = (x0 * vx0 + y0 * vy0 + z0 * vz0)
+				/ Math.sqrt(mass);
+
+		if (inverseA > 0) {
+			double a = 1 / inverseA;
+			elements[offset + 7] = a;
+			elements[offset + 8] = Math.sqrt(mass / (a * a * a));
+			bound[index] = true;
+		} else {
+			bound[index] = false;
+		}
+
+		initialized[index] = true;
+	}
+
+	public boolean isBound(int index) {
+		return bound[index];
+	}
+}
@@ -0,0 +1,208 @@
+package leaptests;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import com.leapmotion.leap.CircleGesture;
+import com.leapmotion.leap.Gesture;
+import com.leapmotion.leap.KeyTapGesture;
+import com.leapmotion.leap.ScreenTapGesture;
+import com.leapmotion.leap.SwipeGesture;
+import com.leapmotion.leap.Vector;
+
+public class LeapGesture {
+	// Cached, because values() returns a new array each time
+	private static final Gesture.Type[] TYPES = Gesture.Type.values();
+	private static final Gesture.State[] STATES = Gesture.State.values();
+
+	private long frameId;
+	private Gesture.Type type;
+	private Gesture.State state;
+	private int id;
+	private float progress;
+	private float radius;
+	private float speed;
+	private float x;
+	private float y;
+	private float z;
+	private float dirX;
+	private float dirY;
+	private float dirZ;
+
+	// Set by LeapInput when the gesture arrives. It's not recorded
+	private long receivedTime;
+
+	public LeapGesture() {
+		type = Gesture.Type.TYPE_INVALID;
+		state = Gesture.State.STATE_INVALID;
+		id = -1;
+	}
+
+	public void copy(Gesture gesture, long frameId) {
+		// The position is the circle center for the circle gestures, and the
+		// current position for the others
+		this.frameId = frameId;
+		type = gesture.type();
+		state = gesture.state();
+		id = gesture.id();
+		progress = 0;
+		radius = 0;
+		speed = 0;
+		Vector position = null;
+		Vector direction = null;
+
+		switch (type) {
+		case TYPE_CIRCLE:
+			CircleGesture circle = new CircleGesture(gesture);
+			progress = circle.progress();
+			radius = circle.radius();
+			position = circle.center();
+			direction = circle.normal();
+			break;
+		case TYPE_SWIPE:
+			SwipeGesture swipe = new SwipeGesture(gesture);
+			speed = swipe.speed();
+			position = swipe.position();
+			direction = swipe.direction();
+			break;
+		case TYPE_KEY_TAP:
+			KeyTapGesture keyTap = new KeyTapGesture(gesture);
+			progress = keyTap.progress();
+			position = keyTap.position();
+			direction = keyTap.direction();
+			break;
+		case TYPE_SCREEN_TAP:
+			ScreenTapGesture screenTap = new ScreenTapGesture(gesture);
+			progress = screenTap.progress();
+			position = screenTap.position();
+			direction = screenTap.direction();
+			break;
+		default:
+			break;
+		}
+
+		x = position != null ? position.getX() : 0;
+		y = position != null ? position.getY() : 0;
+		z = position != null ? position.getZ() : 0;
+		dirX = direction != null ? direction.getX() : 0;
+		dirY = direction != null ? direction.getY() : 0;
+		dirZ = direction != null ? direction.getZ() : 0;
+	}
+
+	public void set(LeapGesture other) {
+		frameId = other.frameId;
+		type = other.type;
+		state = other.state;
+		id = other.id;
+		progress = other.progress;
+		radius = other.radius;
+		speed = other.speed;
+		x = other.x;
+		y = other.y;
+		z = other.z;
+		dirX = other.dirX;
+		dirY = other.dirY;
+		dirZ = other.dirZ;
+		receivedTime = other.receivedTime;
+	}
+
+	public void write(DataOutput output) throws IOException {
+		// The frame id is saved with the frame
+		output.writeByte(type.ordinal());
+		output.writeByte(state.ordinal());
+		output.writeInt(id);
+		output.writeFloat(progress);
+		output.writeFloat(radius);
+		output.writeFloat(speed);
+		output.writeFloat(x);
+		output.writeFloat(y);
+		output.writeFloat(z);
+		output.writeFloat(dirX);
+		output.writeFloat(dirY);
+		output.writeFloat(dirZ);
+	}
+
+	public void read(DataInput input, long frameId) throws IOException {
+		int typeIndex = input.readUnsignedByte();
+		int stateIndex = input.readUnsignedByte();
+
+		if (typeIndex >= TYPES.length || stateIndex >= STATES.length) {
+			throw new IOException("Invalid gesture type or state");
+		}
+
+		this.frameId = frameId;
+		type = TYPES[typeIndex];
+		state = STATES[stateIndex];
+		id = input.readInt();
+		progress = input.readFloat();
+		radius = input.readFloat();
+		speed = input.readFloat();
+		x = input.readFloat();
+		y = input.readFloat();
+		z = input.readFloat();
+		dirX = input.readFloat();
+		dirY = input.readFloat();
+		dirZ = input.readFloat();
+	}
+
+	public long getFrameId() {
+		return frameId;
+	}
+
+	public Gesture.Type getType() {
+		return type;
+	}
+
+	public Gesture.State getState() {
+		return state;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public float getProgress() {
+		return progress;
+	}
+
+	public float getRadius() {
+		return radius;
+	}
+
+	public float getSpeed() {
+		return speed;
+	}
+
+	public float getX() {
+		return x;
+	}
+
+	public float getY() {
+		return y;
+	}
+
+	public float getZ() {
+		return z;
+	}
+
+	public float getDirX() {
+		return dirX;
+	}
+
+	public float getDirY() {
+		return dirY;
+	}
+
+	public float getDirZ() {
+		return dirZ;
+	}
+
+	public void setReceivedTime(long receivedTime) {
+		this.receivedTime = receivedTime;
+	}
+
+	public long getReceivedTime() {
+		// In milliseconds, from System.nanoTime()
+		return receivedTime;
+	}
+}
@@ -0,0 +1,213 @@
+package leaptests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import com.leapmotion.leap.Controller;
+import com.leapmotion.leap.Frame;
+import com.leapmotion.leap.GestureList;
+import com.leapmotion.leap.Listener;
+
+public class LeapInput extends Listener {
+	// Number of gestures that can wait in the queue. It has to be a power of
+	// two
+	private static final int QUEUE_SIZE = 256;
+
+	// Set in the shared index when it points to a snapshot not read yet
+	private static final int FRESH = 4;
+
+	// Triple buffer: the Leap thread fills one snapshot, the render thread
+	// reads another one, and the third one holds the latest complete frame
+	private LeapSnapshot[] snapshots;
+	private int writeIndex;
+	private int readIndex;
+	private AtomicInteger sharedIndex;
+
+	// Single producer, single consumer gesture queue
+	private LeapGesture[] queue;
+	private AtomicLong gestureHead;
+	private AtomicLong gestureTail;
+	private volatile long droppedGestures;
+
+	// Gestures of the last frame, used by the Leap thread only
+	private LeapGesture[] frameGestures;
+	private int nFrameGestures;
+	private Frame lastFrame;
+	private volatile LeapRecorder recorder;
+
+	public LeapInput() {
+		snapshots = new LeapSnapshot[] { new LeapSnapshot(),
+				new LeapSnapshot(), new LeapSnapshot() };
+		writeIndex = 0;
+		readIndex = 1;
+		sharedIndex = new AtomicInteger(2);
+		queue = new LeapGesture[QUEUE_SIZE];
+
+		for (int i = 0; i < QUEUE_SIZE; i++) {
+			queue[i] = new LeapGesture();
+		}
+
+		gestureHead = new AtomicLong(0);
+		gestureTail = new AtomicLong(0);
+		droppedGestures = 0;
+		frameGestures = new LeapGesture[0];
+		nFrameGestures = 0;
+		lastFrame = null;
+		recorder = null;
+	}
+
+	public void onFrame(Controller controller) {
+		// Called from the Leap thread
+		Frame frame = controller.frame();
+
+		if (lastFrame != null && frame.id() == lastFrame.id()) {
+			return;
+		}
+
+		// Ask for the gestures since the last frame seen, in case some
+		// frames were skipped
+		GestureList leapGestures = lastFrame != null ? frame
+				.gestures(lastFrame) : frame.gestures();
+		nFrameGestures = leapGestures.count();
+
+		if (nFrameGestures > frameGestures.length) {
+			int oldLength = frameGestures.length;
+			frameGestures = Arrays.copyOf(frameGestures, Math.max(
+					nFrameGestures, 2 * oldLength));
+
+			for (int i = oldLength; i < frameGestures.length; i++) {
+				frameGestures[i] = new LeapGesture();
+			}
+		}
+
+		for (int i = 0; i < nFrameGestures; i++) {
+			frameGestures[i].copy(leapGestures.get(i), frame.id());
+		}
+
+		lastFrame = frame;
+		snapshots[writeIndex].copy(frame);
+		publish(snapshots[writeIndex], frameGestures, nFrameGestures);
+	}
+
+	public void publish(LeapSnapshot snapshot, LeapGesture[] gestures,
+			int nGestures) {
+		// Called from the thread that produces the frames: the Leap thread,
+		// or a LeapReplay
+		LeapSnapshot target = snapshots[writeIndex];
+
+		if (target != snapshot) {
+			target.set(snapshot);
+		}
+
+		LeapRecorder currentRecorder = recorder;
+
+		if (currentRecorder != null) {
+			try {
+				currentRecorder.write(target, gestures, nGestures);
+			} catch (IOException e) {
+				System.err.println("Could not record the Leap frames: "
+						+ e.getMessage());
+				stopRecording(currentRecorder);
+			}
+		}
+
+		swapWriteSnapshot();
+
+		// The gestures keep the time they arrived, so the render thread
+		// judges them by that time even if it reads them late
+		long time = System.nanoTime() / 1000000;
+
+		for (int i = 0; i < nGestures; i++) {
+			LeapGesture slot = claimGesture();
+
+			if (slot != null) {
+				slot.set(gestures[i]);
+				slot.setReceivedTime(time);
+				publishGesture();
+			}
+		}
+	}
+
+	private void swapWriteSnapshot() {
+		// Leave the new snapshot in the middle and take the old one back
+		writeIndex = sharedIndex.getAndSet(writeIndex | FRESH) & ~FRESH;
+	}
+
+	public LeapSnapshot getSnapshot() {
+		// Called from the render thread. The returned snapshot doesn't
+		// change until the next call
+		if ((sharedIndex.get() & FRESH) != 0) {
+			readIndex = sharedIndex.getAndSet(readIndex) & ~FRESH;
+		}
+
+		return snapshots[readIndex];
+	}
+
+	private LeapGesture claimGesture() {
+		// Returns the next free slot, or null if the render thread is not
+		// keeping up
+		long tail = gestureTail.get();
+
+		if (tail - gestureHead.get() == QUEUE_SIZE) {
+			droppedGestures++;
+			return null;
+		}
+
+		return queue[(int) tail & (QUEUE_SIZE - 1)];
+	}
+
+	private void publishGesture() {
+		gestureTail.lazySet(gestureTail.get() + 1);
+	}
+
+	public boolean pollGesture(LeapGesture target) {
+		// Copies the oldest gesture in the target. Returns false if there are
+		// no gestures waiting
+		long head = gestureHead.get();
+
+		if (head == gestureTail.get()) {
+			return false;
+		}
+
+		target.set(queue[(int) head & (QUEUE_SIZE - 1)]);
+		gestureHead.lazySet(head + 1);
+		return true;
+	}
+
+	public synchronized void startRecording(File file) throws IOException {
+		stopRecording();
+		recorder = new LeapRecorder(file);
+	}
+
+	public synchronized void stopRecording() {
+		stopRecording(recorder);
+	}
+
+	private synchronized void stopRecording(LeapRecorder oldRecorder) {
+		// A failed write only stops its own recording, not one started
+		// after it. The recorder drops the frames that the Leap thread is
+		// still writing to it
+		if (recorder == oldRecorder) {
+			recorder = null;
+		}
+
+		if (oldRecorder != null) {
+			try {
+				oldRecorder.close();
+			} catch (IOException e) {
+				System.err.println("Could not close the Leap recording: "
+						+ e.getMessage());
+			}
+		}
+	}
+
+	public boolean isRecording() {
+		return recorder != null;
+	}
+
+	public long getDroppedGestures() {
+		return droppedGestures;
+	}
+}
@@ -0,0 +1,59 @@
+package leaptests;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public class LeapRecorder {
+	// File layout: magic number and version, followed by one record per
+	// frame with the hands and the gestures of that frame. Big endian
+	public static final int MAGIC = 0x4c454150;
+	public static final int VERSION = 1;
+
+	private DataOutputStream output;
+	private int nFrames;
+	private boolean closed;
+
+	public LeapRecorder(File file) throws IOException {
+		output = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file), 1 << 16));
+		output.writeInt(MAGIC);
+		output.writeInt(VERSION);
+		nFrames = 0;
+		closed = false;
+	}
+
+	public synchronized void write(LeapSnapshot snapshot,
+			LeapGesture[] gestures, int nGestures) throws IOException {
+		// The frames are only appended, so an interrupted recording can
+		// still be replayed up to the last complete frame. The frames that
+		// arrive after closing are dropped
+		if (closed) {
+			return;
+		}
+
+		snapshot.write(output);
+		output.writeShort(nGestures);
+
+		for (int i = 0; i < nGestures; i++) {
+			gestures[i].write(output);
+		}
+
+		nFrames++;
+	}
+
+	public synchronized void close() throws IOException {
+		// Called from the render thread while the Leap thread can be writing
+		// a frame. The lock waits until that frame is complete
+		if (!closed) {
+			closed = true;
+			output.close();
+		}
+	}
+
+	public synchronized int getFrameCount() {
+		return nFrames;
+	}
+}
@@ -0,0 +1,181 @@
+package leaptests;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class LeapReplay implements Runnable {
+	private LeapInput input;
+	private File file;
+	private DataInputStream stream;
+	private LeapSnapshot snapshot;
+	private LeapGesture[] gestures;
+	private int nGestures;
+	private int nFrames;
+	private boolean looping;
+	private volatile boolean running;
+	private Thread thread;
+
+	public LeapReplay(LeapInput input, File file) throws IOException {
+		this.input = input;
+		this.file = file;
+		snapshot = new LeapSnapshot();
+		gestures = new LeapGesture[0];
+		nGestures = 0;
+		nFrames = 0;
+		looping = false;
+		running = false;
+		open();
+	}
+
+	private void open() throws IOException {
+		stream = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file), 1 << 16));
+
+		try {
+			if (stream.readInt() != LeapRecorder.MAGIC
+					|| stream.readInt() != LeapRecorder.VERSION) {
+				throw new IOException("Not a Leap recording: " + file.getPath());
+			}
+		} catch (IOException e) {
+			stream.close();
+			throw e;
+		}
+	}
+
+	public void start() {
+		// Play the frames in a separate thread, at the speed they were
+		// recorded
+		running = true;
+		thread = new Thread(this, "leap-replay");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void stop() {
+		running = false;
+
+		if (thread != null) {
+			thread.interrupt();
+
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			thread = null;
+		}
+	}
+
+	public void run() {
+		long startTime = 0;
+		long firstTimestamp = 0;
+		long lastTimestamp = Long.MAX_VALUE;
+
+		try {
+			while (running && next()) {
+				// The Leap timestamps are in microseconds. Start counting
+				// again when the recording starts again
+				long timestamp = snapshot.getTimestamp();
+
+				if (timestamp < lastTimestamp) {
+					startTime = System.nanoTime();
+					firstTimestamp = timestamp;
+				}
+
+				lastTimestamp = timestamp;
+				long wait = 1000 * (timestamp - firstTimestamp)
+						- (System.nanoTime() - startTime);
+
+				if (wait > 0) {
+					Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+				}
+
+				publish();
+			}
+		} catch (IOException e) {
+			System.err.println("Could not read the Leap recording "
+					+ file.getPath() + ": " + e.getMessage());
+		} catch (InterruptedException e) {
+			// The replay was stopped
+		}
+	}
+
+	public boolean step() throws IOException {
+		// Publishes the next frame straight away. Use it instead of start()
+		// to advance one frame per applet frame, for repeatable benchmarks.
+		// Returns false at the end of the recording
+		if (!next()) {
+			return false;
+		}
+
+		publish();
+		return true;
+	}
+
+	private boolean next() throws IOException {
+		if (readFrame()) {
+			return true;
+		} else if (!looping || nFrames == 0) {
+			return false;
+		}
+
+		stream.close();
+		open();
+		return readFrame();
+	}
+
+	private boolean readFrame() throws IOException {
+		try {
+			snapshot.read(stream);
+			int n = stream.readUnsignedShort();
+
+			if (n > gestures.length) {
+				int oldLength = gestures.length;
+				gestures = Arrays.copyOf(gestures, Math.max(n, 2 * oldLength));
+
+				for (int i = oldLength; i < gestures.length; i++) {
+					gestures[i] = new LeapGesture();
+				}
+			}
+
+			for (int i = 0; i < n; i++) {
+				gestures[i].read(stream, snapshot.getFrameId());
+			}
+
+			nGestures = n;
+			nFrames++;
+			return true;
+		} catch (EOFException e) {
+			// The last frame is incomplete if the recording was interrupted
+			return false;
+		}
+	}
+
+	private void publish() {
+		input.publish(snapshot, gestures, nGestures);
+	}
+
+	public void close() throws IOException {
+		stop();
+		stream.close();
+	}
+
+	public void setLooping(boolean looping) {
+		this.looping = looping;
+	}
+
+	public boolean isLooping() {
+		return looping;
+	}
+
+	public int getFrameCount() {
+		// Number of frames read, counting the repetitions
+		return nFrames;
+	}
+}
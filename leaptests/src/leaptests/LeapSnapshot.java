@@ -0,0 +1,219 @@
+package leaptests;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import com.leapmotion.leap.Finger;
+import com.leapmotion.leap.Frame;
+import com.leapmotion.leap.Hand;
+import com.leapmotion.leap.HandList;
+import com.leapmotion.leap.Vector;
+
+public class LeapSnapshot {
+	// Hands beyond this number are ignored
+	public static final int MAX_HANDS = 8;
+
+	private long frameId;
+	private long timestamp;
+	private int nHands;
+	private int[] handIds;
+	private boolean[] palmValid;
+	private float[] palmX;
+	private float[] palmY;
+	private float[] palmZ;
+	private int[] fingerCounts;
+	private boolean[] tipValid;
+	private float[] tipX;
+	private float[] tipY;
+	private float[] tipZ;
+
+	public LeapSnapshot() {
+		frameId = -1;
+		timestamp = 0;
+		nHands = 0;
+		handIds = new int[MAX_HANDS];
+		palmValid = new boolean[MAX_HANDS];
+		palmX = new float[MAX_HANDS];
+		palmY = new float[MAX_HANDS];
+		palmZ = new float[MAX_HANDS];
+		fingerCounts = new int[MAX_HANDS];
+		tipValid = new boolean[MAX_HANDS];
+		tipX = new float[MAX_HANDS];
+		tipY = new float[MAX_HANDS];
+		tipZ = new float[MAX_HANDS];
+	}
+
+	public void copy(Frame frame) {
+		// Read everything that the sketches use in one go. This is the only
+		// place where the hands data crosses the native interface
+		frameId = frame.id();
+		timestamp = frame.timestamp();
+		HandList hands = frame.hands();
+		nHands = Math.min(hands.count(), MAX_HANDS);
+
+		for (int i = 0; i < nHands; i++) {
+			Hand hand = hands.get(i);
+			Vector palm = hand.palmPosition();
+			handIds[i] = hand.id();
+			palmValid[i] = palm.isValid();
+			palmX[i] = palm.getX();
+			palmY[i] = palm.getY();
+			palmZ[i] = palm.getZ();
+			fingerCounts[i] = hand.fingers().count();
+			Finger finger = hand.fingers().frontmost();
+			tipValid[i] = finger.isValid();
+
+			if (tipValid[i]) {
+				Vector tip = finger.tipPosition();
+				tipX[i] = tip.getX();
+				tipY[i] = tip.getY();
+				tipZ[i] = tip.getZ();
+			}
+		}
+	}
+
+	public void set(LeapSnapshot other) {
+		frameId = other.frameId;
+		timestamp = other.timestamp;
+		nHands = other.nHands;
+		System.arraycopy(other.handIds, 0, handIds, 0, nHands);
+		System.arraycopy(other.palmValid, 0, palmValid, 0, nHands);
+		System.arraycopy(other.palmX, 0, palmX, 0, nHands);
+		System.arraycopy(other.palmY, 0, palmY, 0, nHands);
+		System.arraycopy(other.palmZ, 0, palmZ, 0, nHands);
+		System.arraycopy(other.fingerCounts, 0, fingerCounts, 0, nHands);
+		System.arraycopy(other.tipValid, 0, tipValid, 0, nHands);
+		System.arraycopy(other.tipX, 0, tipX, 0, nHands);
+		System.arraycopy(other.tipY, 0, tipY, 0, nHands);
+		System.arraycopy(other.tipZ, 0, tipZ, 0, nHands);
+	}
+
+	public void write(DataOutput output) throws IOException {
+		output.writeLong(frameId);
+		output.writeLong(timestamp);
+		output.writeByte(nHands);
+
+		for (int i = 0; i < nHands; i++) {
+			output.writeInt(handIds[i]);
+			output.writeBoolean(palmValid[i]);
+			output.writeFloat(palmX[i]);
+			output.writeFloat(palmY[i]);
+			output.writeFloat(palmZ[i]);
+			output.writeByte(fingerCounts[i]);
+			output.writeBoolean(tipValid[i]);
+			output.writeFloat(tipX[i]);
+			output.writeFloat(tipY[i]);
+			output.writeFloat(tipZ[i]);
+		}
+	}
+
+	public void read(DataInput input) throws IOException {
+		frameId = input.readLong();
+		timestamp = input.readLong();
+		nHands = input.readUnsignedByte();
+
+		if (nHands > MAX_HANDS) {
+			throw new IOException("Invalid number of hands: " + nHands);
+		}
+
+		for (int i = 0; i < nHands; i++) {
+			handIds[i] = input.readInt();
+			palmValid[i] = input.readBoolean();
+			palmX[i] = input.readFloat();
+			palmY[i] = input.readFloat();
+			palmZ[i] = input.readFloat();
+			fingerCounts[i] = input.readUnsignedByte();
+			tipValid[i] = input.readBoolean();
+			tipX[i] = input.readFloat();
+			tipY[i] = input.readFloat();
+			tipZ[i] = input.readFloat();
+		}
+	}
+
+	public int findHand(int handId) {
+		// Returns the hand index, or -1 if the hand is not in the frame
+		for (int i = 0; i < nHands; i++) {
+			if (handIds[i] == handId) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	public int getLeftmostHand() {
+		int leftmost = -1;
+
+		for (int i = 0; i < nHands; i++) {
+			if (leftmost < 0 || palmX[i] < palmX[leftmost]) {
+				leftmost = i;
+			}
+		}
+
+		return leftmost;
+	}
+
+	public int getRightmostHand() {
+		int rightmost = -1;
+
+		for (int i = 0; i < nHands; i++) {
+			if (rightmost < 0 || palmX[i] > palmX[rightmost]) {
+				rightmost = i;
+			}
+		}
+
+		return rightmost;
+	}
+
+	public long getFrameId() {
+		return frameId;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public int getHandCount() {
+		return nHands;
+	}
+
+	public int getHandId(int hand) {
+		return handIds[hand];
+	}
+
+	public boolean isPalmValid(int hand) {
+		return palmValid[hand];
+	}
+
+	public float getPalmX(int hand) {
+		return palmX[hand];
+	}
+
+	public float getPalmY(int hand) {
+		return palmY[hand];
+	}
+
+	public float getPalmZ(int hand) {
+		return palmZ[hand];
+	}
+
+	public int getFingerCount(int hand) {
+		return fingerCounts[hand];
+	}
+
+	public boolean isTipValid(int hand) {
+		return tipValid[hand];
+	}
+
+	public float getTipX(int hand) {
+		return tipX[hand];
+	}
+
+	public float getTipY(int hand) {
+		return tipY[hand];
+	}
+
+	public float getTipZ(int hand) {
+		return tipZ[hand];
+	}
+}
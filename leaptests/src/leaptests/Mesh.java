@@ -0,0 +1,156 @@
+package leaptests;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import processing.core.PApplet;
+import processing.core.PConstants;
+import processing.core.PShape;
+
+public class Mesh implements PConstants {
+	private FloatBuffer vertices;
+	private FloatBuffer normals;
+	private IntBuffer colors;
+	private IntBuffer indices;
+	private float scale;
+	private PShape shape;
+
+	public Mesh(FloatBuffer vertices, FloatBuffer normals, IntBuffer indices) {
+		this(vertices, normals, null, indices);
+	}
+
+	public Mesh(FloatBuffer vertices, FloatBuffer normals, IntBuffer colors,
+			IntBuffer indices) {
+		this.vertices = vertices;
+		this.normals = normals;
+		this.colors = colors;
+		this.indices = indices;
+		scale = 1;
+	}
+
+	public static Mesh create(float[] vertices, int[] indices) {
+		return new Mesh(FloatBuffer.wrap(vertices),
+				FloatBuffer.wrap(calculateNormals(vertices, indices)),
+				IntBuffer.wrap(indices));
+	}
+
+	public static float[] calculateNormals(float[] vertices, int[] indices) {
+		float[] normals = new float[vertices.length];
+
+		// Add the normals of the triangles that share each vertex. The cross
+		// product length is proportional to the triangle area, so the big
+		// triangles have more weight
+		for (int i = 0; i < indices.length; i += 3) {
+			int a = 3 * indices[i];
+			int b = 3 * indices[i + 1];
+			int c = 3 * indices[i + 2];
+			float ux = vertices[b] - vertices[a];
+			float uy = vertices[b + 1] - vertices[a + 1];
+			float uz = vertices[b + 2] - vertices[a + 2];
+			float vx = vertices[c] - vertices[a];
+			float vy = vertices[c + 1] - vertices[a + 1];
+			float vz = vertices[c + 2] - vertices[a + 2];
+			float nx = uy * vz - uz * vy;
+			float ny = uz * vx - ux * vz;
+			float nz = ux * vy - uy * vx;
+
+			normals[a] += nx;
+			normals[a + 1] += ny;
+			normals[a + 2] += nz;
+			normals[b] += nx;
+			normals[b + 1] += ny;
+			normals[b + 2] += nz;
+			normals[c] += nx;
+			normals[c + 1] += ny;
+			normals[c + 2] += nz;
+		}
+
+		for (int i = 0; i < normals.length; i += 3) {
+			float length = (float) Math.sqrt(normals[i] * normals[i]
+					+ normals[i + 1] * normals[i + 1] + normals[i + 2]
+					* normals[i + 2]);
+
+			if (length > 0) {
+				normals[i] /= length;
+				normals[i + 1] /= length;
+				normals[i + 2] /= length;
+			}
+		}
+
+		return normals;
+	}
+
+	public void draw(PApplet parent) {
+		// The triangles are sent to the graphics card only once. The next
+		// frames only change the transformation and the lights
+		if (shape == null) {
+			shape = createShape(parent);
+		}
+
+		parent.pushMatrix();
+		parent.scale(scale);
+		parent.shape(shape);
+		parent.popMatrix();
+	}
+
+	public PShape createShape(PApplet parent) {
+		// The meshes without colors use the fill color of the applet at
+		// creation time
+		PShape triangles = parent.createShape();
+		triangles.beginShape(TRIANGLES);
+		triangles.noStroke();
+		triangles.fill(parent.g.fillColor);
+
+		for (int i = 0; i < indices.limit(); i++) {
+			int vertex = indices.get(i);
+			int index = 3 * vertex;
+
+			if (colors != null) {
+				triangles.fill(colors.get(vertex));
+			}
+
+			triangles.normal(normals.get(index), normals.get(index + 1),
+					normals.get(index + 2));
+			triangles.vertex(vertices.get(index), vertices.get(index + 1),
+					vertices.get(index + 2));
+		}
+
+		triangles.endShape();
+		return triangles;
+	}
+
+	public void setScale(float scale) {
+		this.scale = scale;
+	}
+
+	public float getScale() {
+		return scale;
+	}
+
+	public int getVertexCount() {
+		return vertices.limit() / 3;
+	}
+
+	public int getTriangleCount() {
+		return indices.limit() / 3;
+	}
+
+	public FloatBuffer getVertices() {
+		return vertices.duplicate();
+	}
+
+	public FloatBuffer getNormals() {
+		return normals.duplicate();
+	}
+
+	public boolean hasColors() {
+		return colors != null;
+	}
+
+	public IntBuffer getColors() {
+		return colors != null ? colors.duplicate() : null;
+	}
+
+	public IntBuffer getIndices() {
+		return indices.duplicate();
+	}
+}
@@ -0,0 +1,370 @@
+package leaptests;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import processing.core.PApplet;
+
+public class MeshCache {
+	// File layout: magic number, version, length and modification time of
+	// the OBJ file and of its material libraries, number of vertices and
+	// triangles, flags, and the length of the library names. It's followed
+	// by the library names, the vertices, the normals, the colors when the
+	// mesh has them and the triangle indices. Little endian
+	private static final int MAGIC = 0x4853454d;
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 56;
+	private static final String EXTENSION = ".mesh";
+
+	// The mesh has the materials and normals of the file
+	private static final int MATERIALS = 1;
+
+	private MeshCache() {
+	}
+
+	public static Mesh load(PApplet parent, String fileName) {
+		return load(parent, fileName, false);
+	}
+
+	public static Mesh load(PApplet parent, String fileName,
+			boolean materials) {
+		// Without materials the mesh only has the geometry, with smooth
+		// normals. With them, each face has the color of its material and
+		// the normals of the file, or its own normal when the file doesn't
+		// have them
+		File objFile = findFile(parent, fileName);
+		File cacheFile = objFile != null ? new File(objFile.getPath()
+				+ EXTENSION) : null;
+
+		// Use the cached mesh if it was created from the same files
+		if (cacheFile != null && cacheFile.isFile()) {
+			try {
+				Mesh mesh = read(cacheFile, objFile, materials);
+
+				if (mesh != null) {
+					return mesh;
+				}
+			} catch (IOException e) {
+				PApplet.println("Could not read the mesh cache "
+						+ cacheFile.getPath() + ": " + e.getMessage());
+			}
+		}
+
+		// Parse the OBJ file and save the result for the next time. Big files
+		// are parsed in parallel
+		WorkerPool workers = new WorkerPool(Runtime.getRuntime()
+				.availableProcessors());
+		ObjReader reader;
+
+		try {
+			reader = parse(parent, fileName, objFile, workers);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read the OBJ file "
+					+ fileName, e);
+		} finally {
+			workers.shutdown();
+		}
+
+		String[] libraries = materials ? reader.getLibraries()
+				: new String[0];
+		Mesh mesh = materials ? reader.toMesh(readMaterials(parent, objFile,
+				libraries)) : reader.toMesh();
+
+		if (cacheFile != null) {
+			try {
+				write(cacheFile, mesh, objFile, libraries);
+			} catch (IOException e) {
+				PApplet.println("Could not write the mesh cache "
+						+ cacheFile.getPath() + ": " + e.getMessage());
+			}
+		}
+
+		return mesh;
+	}
+
+	private static File findFile(PApplet parent, String fileName) {
+		// The file can be in the sketch data folder, or next to the classes
+		// when the sketch runs from an IDE
+		File file = new File(parent.dataPath(fileName));
+
+		if (file.isFile()) {
+			return file;
+		}
+
+		URL url = parent.getClass().getResource("data/" + fileName);
+
+		if (url != null && url.getProtocol().equals("file")) {
+			try {
+				file = new File(url.toURI());
+
+				if (file.isFile()) {
+					return file;
+				}
+			} catch (URISyntaxException e) {
+				// The cache can't be used
+			}
+		}
+
+		return null;
+	}
+
+	private static HashMap<String, Integer> readMaterials(PApplet parent,
+			File objFile, String[] libraries) {
+		// The libraries are next to the OBJ file, or in the data folder
+		HashMap<String, Integer> colors = new HashMap<String, Integer>();
+
+		for (String library : libraries) {
+			try {
+				BufferedReader reader;
+
+				if (objFile != null) {
+					reader = new BufferedReader(new InputStreamReader(
+							new FileInputStream(getLibraryFile(objFile,
+									library)), "UTF-8"));
+				} else {
+					reader = parent.createReader(library);
+				}
+
+				if (reader == null) {
+					throw new IOException("File not found");
+				}
+
+				try {
+					ObjReader.readMaterials(reader, colors);
+				} finally {
+					reader.close();
+				}
+			} catch (IOException e) {
+				PApplet.println("Could not read the material library "
+						+ library + ": " + e.getMessage());
+			}
+		}
+
+		return colors;
+	}
+
+	private static File getLibraryFile(File objFile, String library) {
+		return new File(objFile.getParentFile(), library);
+	}
+
+	private static long getLibrariesLength(File objFile, String[] libraries) {
+		long length = 0;
+
+		for (String library : libraries) {
+			length += getLibraryFile(objFile, library).length();
+		}
+
+		return length;
+	}
+
+	private static long getLibrariesModified(File objFile, String[] libraries) {
+		long modified = 0;
+
+		for (String library : libraries) {
+			modified = Math.max(modified, getLibraryFile(objFile, library)
+					.lastModified());
+		}
+
+		return modified;
+	}
+
+	public static Mesh read(File cacheFile, File objFile, boolean materials)
+			throws IOException {
+		// Read the whole cache instead of mapping it. A mapped file can't be
+		// replaced on Windows until the mapping is garbage collected, and the
+		// cache has to be rewritten when it's stale
+		RandomAccessFile file = new RandomAccessFile(cacheFile, "r");
+		ByteBuffer buffer;
+
+		try {
+			FileChannel channel = file.getChannel();
+
+			if (channel.size() > Integer.MAX_VALUE) {
+				return null;
+			}
+
+			buffer = ByteBuffer.allocateDirect((int) channel.size());
+
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) {
+					throw new IOException("Unexpected end of file");
+				}
+			}
+		} finally {
+			file.close();
+		}
+
+		buffer.flip();
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+		if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC
+				|| buffer.getInt(4) != VERSION
+				|| buffer.getLong(8) != objFile.length()
+				|| buffer.getLong(16) != objFile.lastModified()
+				|| ((buffer.getInt(48) & MATERIALS) != 0) != materials) {
+			return null;
+		}
+
+		int nVertices = buffer.getInt(40);
+		int nTriangles = buffer.getInt(44);
+		int namesBytes = buffer.getInt(52);
+
+		if (namesBytes < 0 || namesBytes > buffer.limit() - HEADER_SIZE) {
+			return null;
+		}
+
+		// The libraries can change without changing the OBJ file
+		byte[] names = new byte[namesBytes];
+		ByteBuffer namesBuffer = buffer.duplicate();
+		namesBuffer.position(HEADER_SIZE);
+		namesBuffer.get(names);
+		String[] libraries = namesBytes > 0 ? new String(names, "UTF-8")
+				.split("\n") : new String[0];
+
+		if (buffer.getLong(24) != getLibrariesLength(objFile, libraries)
+				|| buffer.getLong(32) != getLibrariesModified(objFile,
+						libraries)) {
+			return null;
+		}
+
+		int offset = HEADER_SIZE + align(namesBytes);
+		int vertexBytes = 4 * 3 * nVertices;
+		int colorBytes = materials ? 4 * nVertices : 0;
+		int indexBytes = 4 * 3 * nTriangles;
+
+		if (buffer.limit() != offset + 2 * vertexBytes + colorBytes
+				+ indexBytes) {
+			return null;
+		}
+
+		FloatBuffer vertices = slice(buffer, offset, vertexBytes)
+				.asFloatBuffer();
+		FloatBuffer normals = slice(buffer, offset + vertexBytes, vertexBytes)
+				.asFloatBuffer();
+		IntBuffer colors = materials ? slice(buffer,
+				offset + 2 * vertexBytes, colorBytes).asIntBuffer() : null;
+		IntBuffer indices = slice(buffer,
+				offset + 2 * vertexBytes + colorBytes, indexBytes)
+				.asIntBuffer();
+
+		return new Mesh(vertices, normals, colors, indices);
+	}
+
+	private static int align(int bytes) {
+		// The arrays start at multiples of four bytes
+		return (bytes + 3) & ~3;
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset);
+		view.limit(offset + length);
+		return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	public static void write(File cacheFile, Mesh mesh, File objFile,
+			String[] libraries) throws IOException {
+		FloatBuffer vertices = mesh.getVertices();
+		FloatBuffer normals = mesh.getNormals();
+		IntBuffer colors = mesh.getColors();
+		IntBuffer indices = mesh.getIndices();
+		StringBuilder names = new StringBuilder();
+
+		for (String library : libraries) {
+			names.append(names.length() > 0 ? "\n" : "").append(library);
+		}
+
+		byte[] namesBytes = names.toString().getBytes("UTF-8");
+		int colorCount = colors != null ? colors.limit() : 0;
+		ByteBuffer buffer = ByteBuffer.allocate(
+				HEADER_SIZE + align(namesBytes.length)
+						+ 4 * (2 * vertices.limit() + colorCount
+								+ indices.limit())).order(
+				ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putLong(objFile.length());
+		buffer.putLong(objFile.lastModified());
+		buffer.putLong(getLibrariesLength(objFile, libraries));
+		buffer.putLong(getLibrariesModified(objFile, libraries));
+		buffer.putInt(mesh.getVertexCount());
+		buffer.putInt(mesh.getTriangleCount());
+		buffer.putInt(colors != null ? MATERIALS : 0);
+		buffer.putInt(namesBytes.length);
+		buffer.put(namesBytes);
+		buffer.position(HEADER_SIZE + align(namesBytes.length));
+		buffer.asFloatBuffer().put(vertices);
+		buffer.position(buffer.position() + 4 * vertices.limit());
+		buffer.asFloatBuffer().put(normals);
+		buffer.position(buffer.position() + 4 * normals.limit());
+
+		if (colors != null) {
+			buffer.asIntBuffer().put(colors);
+			buffer.position(buffer.position() + 4 * colorCount);
+		}
+
+		buffer.asIntBuffer().put(indices);
+		buffer.rewind();
+
+		// Write to a temporary file first, so a failed write never leaves a
+		// broken cache behind
+		File tmpFile = new File(cacheFile.getPath() + ".tmp");
+		FileOutputStream output = new FileOutputStream(tmpFile);
+
+		try {
+			FileChannel channel = output.getChannel();
+
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} finally {
+			output.close();
+		}
+
+		// Renaming doesn't replace existing files on all the platforms
+		if ((cacheFile.exists() && !cacheFile.delete())
+				|| !tmpFile.renameTo(cacheFile)) {
+			tmpFile.delete();
+			throw new IOException("Could not replace " + cacheFile.getPath());
+		}
+	}
+
+	private static ObjReader parse(PApplet parent, String fileName,
+			File objFile, WorkerPool workers) throws IOException {
+		// Map the file when possible, instead of copying it in memory
+		if (objFile != null) {
+			return ObjReader.read(objFile, workers);
+		}
+
+		InputStream input = parent.createInput(fileName);
+
+		if (input == null) {
+			throw new IllegalArgumentException("Could not find the OBJ file "
+					+ fileName);
+		}
+
+		try {
+			return ObjReader.read(input, workers);
+		} finally {
+			input.close();
+		}
+	}
+
+	public static Mesh parse(InputStream input, WorkerPool workers)
+			throws IOException {
+		return ObjReader.read(input, workers).toMesh();
+	}
+}
@@ -0,0 +1,475 @@
+package leaptests;
+
+import processing.core.PVector;
+
+public class NBodyEngine extends StarEngine {
+	// Nodes deeper than this keep all their bodies in a list, so coincident
+	// bodies don't subdivide the tree forever
+	private static final int MAX_DEPTH = 32;
+
+	private double[] starMass;
+	private double[] ax;
+	private double[] ay;
+	private double[] az;
+	private boolean accelerationsReady;
+	private double defaultStarMass;
+	private double theta;
+	private double softening;
+
+	// Extra fixed attractors, besides the central mass at the origin
+	private double[] attractorX;
+	private double[] attractorY;
+	private double[] attractorZ;
+	private double[] attractorMass;
+	private int nAttractors;
+
+	// Octree node pool. The 8 children of a node are stored consecutively,
+	// starting at firstChild. Leaves have firstChild = -1 and point to the
+	// first of their bodies, which are chained with nextBody
+	private int nNodes;
+	private int[] firstChild;
+	private int[] firstBody;
+	private int[] nextBody;
+	private double[] nodeX;
+	private double[] nodeY;
+	private double[] nodeZ;
+	private double[] nodeHalfSize;
+	private double[] nodeMass;
+	private double[] nodeComX;
+	private double[] nodeComY;
+	private double[] nodeComZ;
+
+	private ThreadLocal<int[]> stacks;
+	private WorkerPool.RangeTask driftTask;
+	private WorkerPool.RangeTask kickTask;
+	private float taskStep;
+
+	public NBodyEngine(int capacity, float mass, float starMass) {
+		super(capacity, mass);
+		this.defaultStarMass = starMass;
+		this.starMass = new double[capacity];
+		ax = new double[capacity];
+		ay = new double[capacity];
+		az = new double[capacity];
+		accelerationsReady = false;
+		theta = 0.7;
+		softening = 1;
+
+		attractorX = new double[4];
+		attractorY = new double[4];
+		attractorZ = new double[4];
+		attractorMass = new double[4];
+		nAttractors = 0;
+
+		nextBody = new int[capacity];
+		allocateNodes(2 * capacity + 8);
+
+		stacks = new ThreadLocal<int[]>() {
+			protected int[] initialValue() {
+				// Each level adds at most 7 nodes to the stack
+				return new int[7 * MAX_DEPTH + 8];
+			}
+		};
+
+		driftTask = new WorkerPool.RangeTask() {
+			public void run(int from, int to) {
+				kickAndDrift(from, to, taskStep);
+			}
+		};
+
+		kickTask = new WorkerPool.RangeTask() {
+			public void run(int from, int to) {
+				calculateAccelerations(from, to);
+				kick(from, to, taskStep);
+			}
+		};
+	}
+
+	public int addStar(PVector pos, PVector vel) {
+		return addStar(pos, vel, (float) defaultStarMass);
+	}
+
+	public int addStar(PVector pos, PVector vel, float mass) {
+		int index = super.addStar(pos, vel);
+		starMass[index] = mass;
+		accelerationsReady = false;
+		return index;
+	}
+
+	public void addAttractor(PVector pos, float mass) {
+		if (nAttractors == attractorMass.length) {
+			attractorX = grow(attractorX, 2 * nAttractors);
+			attractorY = grow(attractorY, 2 * nAttractors);
+			attractorZ = grow(attractorZ, 2 * nAttractors);
+			attractorMass = grow(attractorMass, 2 * nAttractors);
+		}
+
+		attractorX[nAttractors] = pos.x;
+		attractorY[nAttractors] = pos.y;
+		attractorZ[nAttractors] = pos.z;
+		attractorMass[nAttractors] = mass;
+		nAttractors++;
+		accelerationsReady = false;
+	}
+
+	public void update(float dt, int iterations) {
+		if (!accelerationsReady) {
+			buildTree();
+			runTask(new WorkerPool.RangeTask() {
+				public void run(int from, int to) {
+					calculateAccelerations(from, to);
+				}
+			});
+			accelerationsReady = true;
+		}
+
+		// Kick-drift-kick leapfrog. The stars are coupled, so all of them
+		// have to be drifted before the tree can be rebuilt
+		taskStep = dt;
+
+		for (int it = 0; it < iterations; it++) {
+			runTask(driftTask);
+			buildTree();
+			runTask(kickTask);
+		}
+
+		advanceTime((double) dt * iterations);
+	}
+
+	private void kickAndDrift(int from, int to, float dt) {
+		double halfStep = 0.5 * dt;
+
+		for (int i = from; i < to; i++) {
+			vx[i] += halfStep * ax[i];
+			vy[i] += halfStep * ay[i];
+			vz[i] += halfStep * az[i];
+			x[i] += dt * vx[i];
+			y[i] += dt * vy[i];
+			z[i] += dt * vz[i];
+		}
+	}
+
+	private void kick(int from, int to, float dt) {
+		double halfStep = 0.5 * dt;
+
+		for (int i = from; i < to; i++) {
+			vx[i] += halfStep * ax[i];
+			vy[i] += halfStep * ay[i];
+			vz[i] += halfStep * az[i];
+		}
+	}
+
+	private void buildTree() {
+		int count = getStarCount();
+		nNodes = 0;
+
+		// Find the cube that contains all the stars
+		double minX = Double.MAX_VALUE;
+		double minY = Double.MAX_VALUE;
+		double minZ = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE;
+		double maxY = -Double.MAX_VALUE;
+		double maxZ = -Double.MAX_VALUE;
+
+		for (int i = 0; i < count; i++) {
+			minX = Math.min(minX, x[i]);
+			minY = Math.min(minY, y[i]);
+			minZ = Math.min(minZ, z[i]);
+			maxX = Math.max(maxX, x[i]);
+			maxY = Math.max(maxY, y[i]);
+			maxZ = Math.max(maxZ, z[i]);
+		}
+
+		double halfSize = 0.5 * Math.max(maxX - minX,
+				Math.max(maxY - minY, maxZ - minZ));
+		newNode(0.5 * (minX + maxX), 0.5 * (minY + maxY), 0.5 * (minZ + maxZ),
+				1.001 * halfSize + 1e-9);
+
+		for (int i = 0; i < count; i++) {
+			insert(i);
+		}
+
+		// Children are always created after their parents, so going through
+		// the pool backwards calculates the node masses from the bottom up
+		for (int node = nNodes - 1; node >= 0; node--) {
+			double m = 0;
+			double mx = 0;
+			double my = 0;
+			double mz = 0;
+			int first = firstChild[node];
+
+			if (first >= 0) {
+				for (int c = first; c < first + 8; c++) {
+					m += nodeMass[c];
+					mx += nodeMass[c] * nodeComX[c];
+					my += nodeMass[c] * nodeComY[c];
+					mz += nodeMass[c] * nodeComZ[c];
+				}
+			} else {
+				for (int b = firstBody[node]; b >= 0; b = nextBody[b]) {
+					m += starMass[b];
+					mx += starMass[b] * x[b];
+					my += starMass[b] * y[b];
+					mz += starMass[b] * z[b];
+				}
+			}
+
+			nodeMass[node] = m;
+
+			if (m > 0) {
+				nodeComX[node] = mx / m;
+				nodeComY[node] = my / m;
+				nodeComZ[node] = mz / m;
+			}
+		}
+	}
+
+	private void insert(int body) {
+		int node = 0;
+		int depth = 0;
+
+		while (true) {
+			if (firstChild[node] >= 0) {
+				node = firstChild[node] + octant(node, body);
+				depth++;
+			} else if (firstBody[node] < 0) {
+				firstBody[node] = body;
+				nextBody[body] = -1;
+				return;
+			} else if (depth >= MAX_DEPTH) {
+				nextBody[body] = firstBody[node];
+				firstBody[node] = body;
+				return;
+			} else {
+				// Split the leaf and move its body one level down. Leaves
+				// above the maximum depth only have one body
+				int other = firstBody[node];
+				firstBody[node] = -1;
+				subdivide(node);
+				int child = firstChild[node] + octant(node, other);
+				firstBody[child] = other;
+				nextBody[other] = -1;
+			}
+		}
+	}
+
+	private int octant(int node, int body) {
+		return (x[body] >= nodeX[node] ? 1 : 0)
+				| (y[body] >= nodeY[node] ? 2 : 0)
+				| (z[body] >= nodeZ[node] ? 4 : 0);
+	}
+
+	private void subdivide(int node) {
+		double h = 0.5 * nodeHalfSize[node];
+		int first = nNodes;
+
+		for (int c = 0; c < 8; c++) {
+			newNode(nodeX[node] + ((c & 1) != 0 ? h : -h), nodeY[node]
+					+ ((c & 2) != 0 ? h : -h), nodeZ[node]
+					+ ((c & 4) != 0 ? h : -h), h);
+		}
+
+		firstChild[node] = first;
+	}
+
+	private int newNode(double cx, double cy, double cz, double halfSize) {
+		if (nNodes == firstChild.length) {
+			// Grow the pool. This only happens until it reaches the size
+			// needed by the star distribution
+			allocateNodes(2 * nNodes);
+		}
+
+		firstChild[nNodes] = -1;
+		firstBody[nNodes] = -1;
+		nodeX[nNodes] = cx;
+		nodeY[nNodes] = cy;
+		nodeZ[nNodes] = cz;
+		nodeHalfSize[nNodes] = halfSize;
+		nodeMass[nNodes] = 0;
+		nNodes++;
+
+		return nNodes - 1;
+	}
+
+	private void allocateNodes(int size) {
+		firstChild = grow(firstChild, size);
+		firstBody = grow(firstBody, size);
+		nodeX = grow(nodeX, size);
+		nodeY = grow(nodeY, size);
+		nodeZ = grow(nodeZ, size);
+		nodeHalfSize = grow(nodeHalfSize, size);
+		nodeMass = grow(nodeMass, size);
+		nodeComX = grow(nodeComX, size);
+		nodeComY = grow(nodeComY, size);
+		nodeComZ = grow(nodeComZ, size);
+	}
+
+	private void calculateAccelerations(int from, int to) {
+		int[] stack = stacks.get();
+		double thetaSq = theta * theta;
+		double softeningSq = softening * softening;
+		double centralMass = getMass();
+
+		for (int i = from; i < to; i++) {
+			double px = x[i];
+			double py = y[i];
+			double pz = z[i];
+
+			// Central mass and extra attractors
+			double rSq = px * px + py * py + pz * pz;
+			double factor = -centralMass / (rSq * Math.sqrt(rSq));
+			double accX = factor * px;
+			double accY = factor * py;
+			double accZ = factor * pz;
+
+			for (int a = 0; a < nAttractors; a++) {
+				double dx = attractorX[a] - px;
+				double dy = attractorY[a] - py;
+				double dz = attractorZ[a] - pz;
+				rSq = dx * dx + dy * dy + dz * dz;
+				factor = attractorMass[a] / (rSq * Math.sqrt(rSq));
+				accX += factor * dx;
+				accY += factor * dy;
+				accZ += factor * dz;
+			}
+
+			// Walk the tree, opening the nodes that look too big from the
+			// star position
+			int top = 0;
+			stack[top++] = 0;
+
+			while (top > 0) {
+				int node = stack[--top];
+
+				if (nodeMass[node] == 0) {
+					continue;
+				}
+
+				int first = firstChild[node];
+
+				if (first < 0) {
+					for (int b = firstBody[node]; b >= 0; b = nextBody[b]) {
+						if (b != i) {
+							double dx = x[b] - px;
+							double dy = y[b] - py;
+							double dz = z[b] - pz;
+							rSq = dx * dx + dy * dy + dz * dz + softeningSq;
+							factor = starMass[b] / (rSq * Math.sqrt(rSq));
+							accX += factor * dx;
+							accY += factor * dy;
+							accZ += factor * dz;
+						}
+					}
+				} else {
+					double dx = nodeComX[node] - px;
+					double dy = nodeComY[node] - py;
+					double dz = nodeComZ[node] - pz;
+					double dSq = dx * dx + dy * dy + dz * dz;
+					double h = nodeHalfSize[node];
+					double size = 2 * h;
+
+					// A node that contains the star is always opened, even
+					// if its center of mass is far, so the star never
+					// attracts itself
+					boolean containsStar = Math.abs(px - nodeX[node]) <= h
+							&& Math.abs(py - nodeY[node]) <= h
+							&& Math.abs(pz - nodeZ[node]) <= h;
+
+					if (!containsStar && size * size < thetaSq * dSq) {
+						rSq = dSq + softeningSq;
+						factor = nodeMass[node] / (rSq * Math.sqrt(rSq));
+						accX += factor * dx;
+						accY += factor * dy;
+						accZ += factor * dz;
+					} else {
+						for (int c = first; c < first + 8; c++) {
+							stack[top++] = c;
+						}
+					}
+				}
+			}
+
+			ax[i] = accX;
+			ay[i] = accY;
+			az[i] = accZ;
+			forceEvaluations[i]++;
+		}
+	}
+
+	public double getTotalEnergy() {
+		// Exact O(n^2) sum, only meant to monitor the integration
+		int count = getStarCount();
+		double centralMass = getMass();
+		double softeningSq = softening * softening;
+		double energy = 0;
+
+		for (int i = 0; i < count; i++) {
+			double vSq = vx[i] * vx[i] + vy[i] * vy[i] + vz[i] * vz[i];
+			double r = Math.sqrt(x[i] * x[i] + y[i] * y[i] + z[i] * z[i]);
+			energy += starMass[i] * (vSq / 2 - centralMass / r);
+
+			for (int a = 0; a < nAttractors; a++) {
+				double dx = attractorX[a] - x[i];
+				double dy = attractorY[a] - y[i];
+				double dz = attractorZ[a] - z[i];
+				energy -= starMass[i] * attractorMass[a]
+						/ Math.sqrt(dx * dx + dy * dy + dz * dz);
+			}
+
+			for (int j = i + 1; j < count; j++) {
+				double dx = x[j] - x[i];
+				double dy = y[j] - y[i];
+				double dz = z[j] - z[i];
+				energy -= starMass[i] * starMass[j]
+						/ Math.sqrt(dx * dx + dy * dy + dz * dz + softeningSq);
+			}
+		}
+
+		return energy;
+	}
+
+	public void setOpeningAngle(float theta) {
+		this.theta = theta;
+	}
+
+	public float getOpeningAngle() {
+		return (float) theta;
+	}
+
+	public void setSoftening(float softening) {
+		this.softening = softening;
+		accelerationsReady = false;
+	}
+
+	public float getSoftening() {
+		return (float) softening;
+	}
+
+	public float getStarMass(int i) {
+		return (float) starMass[i];
+	}
+
+	public int getNodeCount() {
+		return nNodes;
+	}
+
+	private static int[] grow(int[] array, int size) {
+		int[] newArray = new int[size];
+
+		if (array != null) {
+			System.arraycopy(array, 0, newArray, 0, array.length);
+		}
+
+		return newArray;
+	}
+
+	private static double[] grow(double[] array, int size) {
+		double[] newArray = new double[size];
+
+		if (array != null) {
+			System.arraycopy(array, 0, newArray, 0, array.length);
+		}
+
+		return newArray;
+	}
+}
@@ -0,0 +1,9 @@
+package leaptests;
+
+public interface NoiseSource {
+	// Smooth noise with values between 0 and 1, like Processing's noise().
+	// PApplet already implements these methods
+	float noise(float x);
+
+	float noise(float x, float y);
+}
@@ -0,0 +1,753 @@
+package leaptests;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ObjReader {
+	// The file is split in chunks of about this size, ending at line breaks
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	// Diffuse color of the faces without a material, the default of the MTL
+	// format
+	private static final int DEFAULT_COLOR = 0xffcccccc;
+
+	// Powers of ten that can be represented exactly with doubles
+	private static final double[] POWERS_OF_TEN = new double[23];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = 10 * POWERS_OF_TEN[i - 1];
+		}
+	}
+
+	private ByteBuffer data;
+	private int nChunks;
+	private int[] chunkStarts;
+	private int[] vertexOffsets;
+	private int[] normalOffsets;
+	private int[] indexOffsets;
+	private float[] vertices;
+	private float[] normals;
+	private int[] indices;
+	private int[] normalIndices;
+
+	// The materials are a state that goes from one chunk to the next. The
+	// first pass saves the names used in each chunk, and the last one
+	private String[][] chunkMaterials;
+	private String[][] chunkLibraries;
+	private String[] chunkLastMaterial;
+	private int[] chunkStartMaterial;
+	private HashMap<String, Integer> materialIds;
+	private ArrayList<String> materials;
+	private ArrayList<String> libraries;
+	private int[] triangleMaterials;
+	private volatile String error;
+
+	private ObjReader(ByteBuffer data) {
+		this.data = data;
+	}
+
+	public static ObjReader read(File file, WorkerPool workers)
+			throws IOException {
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		ByteBuffer data;
+
+		try {
+			FileChannel channel = input.getChannel();
+
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("The OBJ file is too big: "
+						+ file.getPath());
+			}
+
+			data = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+		} finally {
+			input.close();
+		}
+
+		ObjReader reader = new ObjReader(data);
+		reader.parse(workers);
+		return reader;
+	}
+
+	public static ObjReader read(InputStream input, WorkerPool workers)
+			throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream(1 << 20);
+		byte[] buffer = new byte[1 << 16];
+		int n;
+
+		while ((n = input.read(buffer)) != -1) {
+			output.write(buffer, 0, n);
+		}
+
+		ObjReader reader = new ObjReader(ByteBuffer.wrap(output.toByteArray()));
+		reader.parse(workers);
+		return reader;
+	}
+
+	private void parse(WorkerPool workers) throws IOException {
+		// Split the data in chunks that start at the beginning of a line
+		int size = data.limit();
+		nChunks = Math.max(1, size / CHUNK_SIZE);
+		chunkStarts = new int[nChunks + 1];
+		chunkStarts[nChunks] = size;
+
+		for (int c = 1; c < nChunks; c++) {
+			int pos = Math.max((int) ((long) size * c / nChunks),
+					chunkStarts[c - 1]);
+
+			while (pos < size && data.get(pos - 1) != '\n') {
+				pos++;
+			}
+
+			chunkStarts[c] = pos;
+		}
+
+		// First pass: count the vertices, normals and triangles in each chunk
+		vertexOffsets = new int[nChunks + 1];
+		normalOffsets = new int[nChunks + 1];
+		indexOffsets = new int[nChunks + 1];
+		chunkMaterials = new String[nChunks][];
+		chunkLastMaterial = new String[nChunks];
+		chunkLibraries = new String[nChunks][];
+		run(workers, new WorkerPool.RangeTask() {
+			public void run(int from, int to) {
+				for (int c = from; c < to; c++) {
+					new ChunkParser(c).count();
+				}
+			}
+		});
+
+		// The counts give the position of each chunk in the final arrays
+		for (int c = 0; c < nChunks; c++) {
+			vertexOffsets[c + 1] += vertexOffsets[c];
+			normalOffsets[c + 1] += normalOffsets[c];
+			indexOffsets[c + 1] += indexOffsets[c];
+		}
+
+		// Number the materials in the order they appear, and find the one
+		// used at the start of each chunk
+		materialIds = new HashMap<String, Integer>();
+		materials = new ArrayList<String>();
+		libraries = new ArrayList<String>();
+		chunkStartMaterial = new int[nChunks];
+		int material = -1;
+
+		for (int c = 0; c < nChunks; c++) {
+			chunkStartMaterial[c] = material;
+
+			for (String name : chunkLibraries[c]) {
+				if (!libraries.contains(name)) {
+					libraries.add(name);
+				}
+			}
+
+			for (String name : chunkMaterials[c]) {
+				if (!materialIds.containsKey(name)) {
+					materialIds.put(name, materials.size());
+					materials.add(name);
+				}
+			}
+
+			if (chunkLastMaterial[c] != null) {
+				material = materialIds.get(chunkLastMaterial[c]);
+			}
+		}
+
+		vertices = new float[3 * vertexOffsets[nChunks]];
+		indices = new int[indexOffsets[nChunks]];
+
+		if (normalOffsets[nChunks] > 0) {
+			normals = new float[3 * normalOffsets[nChunks]];
+			normalIndices = new int[indices.length];
+		}
+
+		if (!materials.isEmpty()) {
+			triangleMaterials = new int[indices.length / 3];
+		}
+
+		// Second pass: parse each chunk directly into the final arrays
+		run(workers, new WorkerPool.RangeTask() {
+			public void run(int from, int to) {
+				for (int c = from; c < to && error == null; c++) {
+					new ChunkParser(c).parse();
+				}
+			}
+		});
+
+		if (error != null) {
+			throw new IOException(error);
+		}
+	}
+
+	private void run(WorkerPool workers, WorkerPool.RangeTask task) {
+		if (workers == null) {
+			task.run(0, nChunks);
+		} else {
+			workers.run(nChunks, task);
+		}
+	}
+
+	public float[] getVertices() {
+		return vertices;
+	}
+
+	public int[] getIndices() {
+		return indices;
+	}
+
+	public int getVertexCount() {
+		return vertices.length / 3;
+	}
+
+	public int getTriangleCount() {
+		return indices.length / 3;
+	}
+
+	public boolean hasNormals() {
+		return normals != null;
+	}
+
+	public String[] getLibraries() {
+		return libraries.toArray(new String[libraries.size()]);
+	}
+
+	public Mesh toMesh() {
+		// Only the geometry, with smooth normals
+		return Mesh.create(vertices, indices);
+	}
+
+	public Mesh toMesh(Map<String, Integer> colors) {
+		// The faces with their material colors and the normals of the file,
+		// or their own normal if the file doesn't have them. The vertices
+		// are not shared between faces, because their normals and colors
+		// can be different on each face
+		int nTriangles = getTriangleCount();
+		float[] cornerVertices = new float[3 * indices.length];
+		float[] cornerNormals = new float[3 * indices.length];
+		int[] cornerColors = new int[indices.length];
+		int[] cornerIndices = new int[indices.length];
+		int[] materialColors = new int[materials.size()];
+
+		for (int m = 0; m < materialColors.length; m++) {
+			Integer color = colors.get(materials.get(m));
+			materialColors[m] = color != null ? color : DEFAULT_COLOR;
+		}
+
+		for (int t = 0; t < nTriangles; t++) {
+			int a = 3 * indices[3 * t];
+			int b = 3 * indices[3 * t + 1];
+			int c = 3 * indices[3 * t + 2];
+			float ux = vertices[b] - vertices[a];
+			float uy = vertices[b + 1] - vertices[a + 1];
+			float uz = vertices[b + 2] - vertices[a + 2];
+			float vx = vertices[c] - vertices[a];
+			float vy = vertices[c + 1] - vertices[a + 1];
+			float vz = vertices[c + 2] - vertices[a + 2];
+			float nx = uy * vz - uz * vy;
+			float ny = uz * vx - ux * vz;
+			float nz = ux * vy - uy * vx;
+			float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+			if (length > 0) {
+				nx /= length;
+				ny /= length;
+				nz /= length;
+			}
+
+			int material = triangleMaterials != null ? triangleMaterials[t]
+					: -1;
+			int color = material >= 0 ? materialColors[material]
+					: DEFAULT_COLOR;
+
+			for (int k = 3 * t; k < 3 * t + 3; k++) {
+				int vertex = 3 * indices[k];
+				cornerVertices[3 * k] = vertices[vertex];
+				cornerVertices[3 * k + 1] = vertices[vertex + 1];
+				cornerVertices[3 * k + 2] = vertices[vertex + 2];
+
+				if (normalIndices != null && normalIndices[k] >= 0) {
+					int normal = 3 * normalIndices[k];
+					cornerNormals[3 * k] = normals[normal];
+					cornerNormals[3 * k + 1] = normals[normal + 1];
+					cornerNormals[3 * k + 2] = normals[normal + 2];
+				} else {
+					cornerNormals[3 * k] = nx;
+					cornerNormals[3 * k + 1] = ny;
+					cornerNormals[3 * k + 2] = nz;
+				}
+
+				cornerColors[k] = color;
+				cornerIndices[k] = k;
+			}
+		}
+
+		return new Mesh(FloatBuffer.wrap(cornerVertices),
+				FloatBuffer.wrap(cornerNormals), IntBuffer.wrap(cornerColors),
+				IntBuffer.wrap(cornerIndices));
+	}
+
+	public static void readMaterials(BufferedReader reader,
+			Map<String, Integer> colors) throws IOException {
+		// Only the diffuse color and the opacity of each material are used
+		String name = null;
+		float[] diffuse = null;
+		float opacity = 1;
+		int lineNumber = 0;
+		String line;
+
+		while ((line = reader.readLine()) != null) {
+			String[] tokens = line.trim().split("\\s+");
+			lineNumber++;
+
+			try {
+				if (tokens[0].equals("newmtl") && tokens.length > 1) {
+					if (name != null) {
+						colors.put(name, toColor(diffuse, opacity));
+					}
+
+					name = line.trim().substring(6).trim();
+					diffuse = null;
+					opacity = 1;
+				} else if (tokens[0].equals("Kd") && tokens.length > 3) {
+					diffuse = new float[] { Float.parseFloat(tokens[1]),
+							Float.parseFloat(tokens[2]),
+							Float.parseFloat(tokens[3]) };
+				} else if (tokens[0].equals("d") && tokens.length > 1) {
+					opacity = Float.parseFloat(tokens[1]);
+				} else if (tokens[0].equals("Tr") && tokens.length > 1) {
+					opacity = 1 - Float.parseFloat(tokens[1]);
+				}
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid number in line " + lineNumber);
+			}
+		}
+
+		if (name != null) {
+			colors.put(name, toColor(diffuse, opacity));
+		}
+	}
+
+	private static int toColor(float[] diffuse, float opacity) {
+		if (diffuse == null) {
+			return (Colors.level(255 * opacity) << 24)
+					| (DEFAULT_COLOR & 0xffffff);
+		}
+
+		return (Colors.level(255 * opacity) << 24)
+				| (Colors.level(255 * diffuse[0]) << 16)
+				| (Colors.level(255 * diffuse[1]) << 8)
+				| Colors.level(255 * diffuse[2]);
+	}
+
+	private class ChunkParser {
+		private int chunk;
+		private int pos;
+		private int end;
+
+		public ChunkParser(int chunk) {
+			this.chunk = chunk;
+			pos = chunkStarts[chunk];
+			end = chunkStarts[chunk + 1];
+		}
+
+		public void count() {
+			int nVertices = 0;
+			int nNormals = 0;
+			int nIndices = 0;
+			ArrayList<String> names = new ArrayList<String>();
+			ArrayList<String> libraryNames = new ArrayList<String>();
+			String material = null;
+
+			while (pos < end) {
+				skipSpaces();
+
+				if (isRecord('v')) {
+					nVertices++;
+				} else if (isRecord("vn")) {
+					nNormals++;
+				} else if (isRecord("usemtl")) {
+					pos += 6;
+					material = parseName();
+					names.add(material);
+				} else if (isRecord("mtllib")) {
+					pos += 6;
+
+					// One line can have several libraries
+					for (String name : parseName().split("\\s+")) {
+						if (name.length() > 0) {
+							libraryNames.add(name);
+						}
+					}
+				} else if (isRecord('f')) {
+					pos++;
+					int nCorners = 0;
+
+					while (skipSpaces()) {
+						skipToken();
+						nCorners++;
+					}
+
+					nIndices += 3 * Math.max(0, nCorners - 2);
+				}
+
+				skipLine();
+			}
+
+			// Saved one position ahead, so the prefix sums give the offsets
+			vertexOffsets[chunk + 1] = nVertices;
+			normalOffsets[chunk + 1] = nNormals;
+			indexOffsets[chunk + 1] = nIndices;
+			chunkMaterials[chunk] = names.toArray(new String[names.size()]);
+			chunkLastMaterial[chunk] = material;
+			chunkLibraries[chunk] = libraryNames.toArray(
+					new String[libraryNames.size()]);
+		}
+
+		public void parse() {
+			int vertex = vertexOffsets[chunk];
+			int normal = normalOffsets[chunk];
+			int index = indexOffsets[chunk];
+			int nVertices = vertexOffsets[nChunks];
+			int nNormals = normalOffsets[nChunks];
+			int material = chunkStartMaterial[chunk];
+
+			while (pos < end && error == null) {
+				skipSpaces();
+
+				if (isRecord('v')) {
+					pos++;
+					vertices[3 * vertex] = parseFloat();
+					vertices[3 * vertex + 1] = parseFloat();
+					vertices[3 * vertex + 2] = parseFloat();
+					vertex++;
+				} else if (isRecord("vn")) {
+					pos += 2;
+					normals[3 * normal] = parseFloat();
+					normals[3 * normal + 1] = parseFloat();
+					normals[3 * normal + 2] = parseFloat();
+					normal++;
+				} else if (isRecord("usemtl")) {
+					pos += 6;
+					material = materialIds.get(parseName());
+				} else if (isRecord('f')) {
+					pos++;
+
+					// Split the polygons in triangle fans. Negative indices
+					// are relative to the last vertex or normal read
+					int first = -1;
+					int firstNormal = -1;
+					int previous = -1;
+					int previousNormal = -1;
+					int nCorners = 0;
+
+					while (skipSpaces()) {
+						int corner = parseIndex();
+						corner = corner < 0 ? vertex + corner : corner - 1;
+						int cornerNormal = parseNormalIndex();
+
+						if (cornerNormal != 0) {
+							cornerNormal = cornerNormal < 0 ? normal
+									+ cornerNormal : cornerNormal - 1;
+
+							if (cornerNormal < 0 || cornerNormal >= nNormals) {
+								fail("Invalid normal index");
+								return;
+							}
+						} else {
+							cornerNormal = -1;
+						}
+
+						skipToken();
+
+						if (corner < 0 || corner >= nVertices) {
+							fail("Invalid vertex index");
+							return;
+						}
+
+						if (nCorners == 0) {
+							first = corner;
+							firstNormal = cornerNormal;
+						} else if (nCorners >= 2) {
+							if (normalIndices != null) {
+								normalIndices[index] = firstNormal;
+								normalIndices[index + 1] = previousNormal;
+								normalIndices[index + 2] = cornerNormal;
+							}
+
+							if (triangleMaterials != null) {
+								triangleMaterials[index / 3] = material;
+							}
+
+							indices[index++] = first;
+							indices[index++] = previous;
+							indices[index++] = corner;
+						}
+
+						previous = corner;
+						previousNormal = cornerNormal;
+						nCorners++;
+					}
+				}
+
+				skipLine();
+			}
+		}
+
+		private boolean isRecord(char type) {
+			// The record type has to be followed by a space. This skips the
+			// vn and vt records
+			return pos + 1 < end && data.get(pos) == type
+					&& isSpace(data.get(pos + 1));
+		}
+
+		private boolean isRecord(String type) {
+			int length = type.length();
+
+			if (pos + length >= end || !isSpace(data.get(pos + length))) {
+				return false;
+			}
+
+			for (int i = 0; i < length; i++) {
+				if (data.get(pos + i) != type.charAt(i)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		private String parseName() {
+			// The rest of the line, without the spaces around it
+			skipSpaces();
+			int start = pos;
+			int last = pos;
+
+			while (pos < end && data.get(pos) != '\n') {
+				if (!isSpace(data.get(pos))) {
+					last = pos + 1;
+				}
+
+				pos++;
+			}
+
+			byte[] bytes = new byte[last - start];
+
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = data.get(start + i);
+			}
+
+			try {
+				return new String(bytes, "UTF-8");
+			} catch (UnsupportedEncodingException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		private boolean skipSpaces() {
+			// Returns false at the end of the line
+			while (pos < end) {
+				byte b = data.get(pos);
+
+				if (b == '\n') {
+					return false;
+				} else if (!isSpace(b)) {
+					return true;
+				}
+
+				pos++;
+			}
+
+			return false;
+		}
+
+		private void skipToken() {
+			while (pos < end && !isSpace(data.get(pos))
+					&& data.get(pos) != '\n') {
+				pos++;
+			}
+		}
+
+		private void skipLine() {
+			while (pos < end && data.get(pos) != '\n') {
+				pos++;
+			}
+
+			pos++;
+		}
+
+		private float parseFloat() {
+			if (!skipSpaces()) {
+				fail("Missing vertex coordinate");
+				return 0;
+			}
+
+			boolean negative = false;
+			byte b = data.get(pos);
+
+			if (b == '-' || b == '+') {
+				negative = b == '-';
+				pos++;
+			}
+
+			// Accumulate up to 18 significant digits in a long, and count
+			// the decimal places
+			long mantissa = 0;
+			int nDigits = 0;
+			int exponent = 0;
+			boolean decimals = false;
+			boolean valid = false;
+
+			while (pos < end) {
+				b = data.get(pos);
+
+				if (b >= '0' && b <= '9') {
+					valid = true;
+
+					if (nDigits < 18) {
+						mantissa = 10 * mantissa + (b - '0');
+
+						if (mantissa != 0) {
+							nDigits++;
+						}
+
+						if (decimals) {
+							exponent--;
+						}
+					} else if (!decimals) {
+						exponent++;
+					}
+				} else if (b == '.' && !decimals) {
+					decimals = true;
+				} else {
+					break;
+				}
+
+				pos++;
+			}
+
+			if (pos < end && (b == 'e' || b == 'E')) {
+				pos++;
+				boolean negativeExponent = false;
+
+				if (pos < end && (data.get(pos) == '-' || data.get(pos) == '+')) {
+					negativeExponent = data.get(pos) == '-';
+					pos++;
+				}
+
+				int value = 0;
+
+				while (pos < end && data.get(pos) >= '0' && data.get(pos) <= '9') {
+					value = Math.min(10 * value + (data.get(pos) - '0'), 1000);
+					pos++;
+				}
+
+				exponent += negativeExponent ? -value : value;
+			}
+
+			if (!valid) {
+				fail("Invalid vertex coordinate");
+				return 0;
+			}
+
+			double value = mantissa;
+
+			if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+				value /= POWERS_OF_TEN[-exponent];
+			} else if (exponent > 0 && exponent < POWERS_OF_TEN.length) {
+				value *= POWERS_OF_TEN[exponent];
+			} else if (exponent != 0) {
+				value *= Math.pow(10, exponent);
+			}
+
+			return (float) (negative ? -value : value);
+		}
+
+		private int parseNormalIndex() {
+			// The corners can be v, v/vt, v//vn or v/vt/vn. Returns 0 when
+			// there is no normal index. The texture index is not used
+			if (pos >= end || data.get(pos) != '/') {
+				return 0;
+			}
+
+			pos++;
+
+			while (pos < end && data.get(pos) != '/' && !isSpace(data.get(pos))
+					&& data.get(pos) != '\n') {
+				pos++;
+			}
+
+			if (pos >= end || data.get(pos) != '/') {
+				return 0;
+			}
+
+			pos++;
+			return parseIndex();
+		}
+
+		private int parseIndex() {
+			boolean negative = false;
+			byte b = data.get(pos);
+
+			if (b == '-') {
+				negative = true;
+				pos++;
+			}
+
+			int value = 0;
+			boolean valid = false;
+
+			while (pos < end) {
+				b = data.get(pos);
+
+				if (b < '0' || b > '9') {
+					break;
+				}
+
+				value = 10 * value + (b - '0');
+				valid = true;
+				pos++;
+			}
+
+			if (!valid) {
+				fail("Invalid face index");
+				return 0;
+			}
+
+			return negative ? -value : value;
+		}
+
+		private boolean isSpace(byte b) {
+			return b == ' ' || b == '\t' || b == '\r';
+		}
+
+		private void fail(String message) {
+			// Find the line number, only needed for the error message
+			int line = 1;
+
+			for (int i = 0; i < pos && i < data.limit(); i++) {
+				if (data.get(i) == '\n') {
+					line++;
+				}
+			}
+
+			error = message + " in line " + line;
+			pos = end;
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package leaptests;
+
+public class OneEuroFilter {
+	// Low pass filter with a cutoff frequency that increases with the speed:
+	// slow movements are smoothed a lot to remove the jitter, and fast
+	// movements only a little to keep the lag small. See Casiez et al.,
+	// "1 Euro Filter", CHI 2012
+	private float minCutoff;
+	private float beta;
+	private float derivativeCutoff;
+	private float value;
+	private float derivative;
+	private boolean initialized;
+
+	public OneEuroFilter(float minCutoff, float beta, float derivativeCutoff) {
+		this.minCutoff = minCutoff;
+		this.beta = beta;
+		this.derivativeCutoff = derivativeCutoff;
+		reset();
+	}
+
+	public void reset() {
+		value = 0;
+		derivative = 0;
+		initialized = false;
+	}
+
+	public float filter(float newValue, float dt) {
+		// The time step is in seconds. The first value goes through
+		// unchanged
+		if (!initialized || dt <= 0) {
+			if (!initialized) {
+				value = newValue;
+				derivative = 0;
+				initialized = true;
+			}
+
+			return value;
+		}
+
+		float newDerivative = (newValue - value) / dt;
+		derivative += smoothing(derivativeCutoff, dt)
+				* (newDerivative - derivative);
+		float cutoff = minCutoff + beta * Math.abs(derivative);
+		value += smoothing(cutoff, dt) * (newValue - value);
+
+		return value;
+	}
+
+	private static float smoothing(float cutoff, float dt) {
+		float tau = 1 / (2 * (float) Math.PI * cutoff);
+		return 1 / (1 + tau / dt);
+	}
+
+	public float predict(float time) {
+		// Extrapolate the filtered value with the filtered speed
+		return value + derivative * time;
+	}
+
+	public float getValue() {
+		return value;
+	}
+
+	public float getDerivative() {
+		return derivative;
+	}
+
+	public boolean isInitialized() {
+		return initialized;
+	}
+
+	public void setMinCutoff(float minCutoff) {
+		this.minCutoff = minCutoff;
+	}
+
+	public void setBeta(float beta) {
+		this.beta = beta;
+	}
+
+	public void setDerivativeCutoff(float derivativeCutoff) {
+		this.derivativeCutoff = derivativeCutoff;
+	}
+}
@@ -0,0 +1,297 @@
+package leaptests;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import processing.core.PVector;
+import processing.data.Table;
+
+public class OrbitBenchmark {
+	// Same units and time step as the galactic center sketches
+	public static final float SCALING = 6e-10f;
+	public static final float BH_MASS = 4.3e6f * 1.989e30f * 6.67384e-11f
+			* 1e-9f * SCALING * SCALING * SCALING;
+	public static final float STAR_MASS = 10 * 1.989e30f * 6.67384e-11f
+			* 1e-9f * SCALING * SCALING * SCALING;
+
+	private String input = null;
+	private int nRandomStars = 0;
+	private String integratorName = "kepler";
+	private int nThreads = 1;
+	private int nFrames = 1000;
+	private int nWarmupFrames = 100;
+	private float timeStep = 3 * 3600;
+	private int nSteps = 50;
+	private long seed = 1;
+
+	public static void main(String[] args) {
+		OrbitBenchmark benchmark = new OrbitBenchmark();
+
+		try {
+			benchmark.parseArguments(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			printUsage();
+			System.exit(2);
+		}
+
+		try {
+			benchmark.run();
+		} catch (IOException e) {
+			System.err.println("Could not read the stars: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private static void printUsage() {
+		System.err.println("Usage: java leaptests.OrbitBenchmark [options]"
+				+ " [stars.csv]");
+		System.err.println("  --random N        use N random stars instead"
+				+ " of a csv file");
+		System.err.println("  --integrator NAME verlet, yoshida, adaptive,"
+				+ " kepler or nbody (default kepler)");
+		System.err.println("  --threads N       number of worker threads"
+				+ " (default 1)");
+		System.err.println("  --frames N        number of measured frames"
+				+ " (default 1000)");
+		System.err.println("  --warmup N        number of frames run before"
+				+ " measuring (default 100)");
+		System.err.println("  --dt SECONDS      integration time step"
+				+ " (default 10800)");
+		System.err.println("  --steps N         time steps per frame"
+				+ " (default 50)");
+		System.err.println("  --seed N          seed for the random stars"
+				+ " (default 1)");
+	}
+
+	private void parseArguments(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+
+			if (!arg.startsWith("--")) {
+				input = arg;
+			} else if (i + 1 == args.length) {
+				throw new IllegalArgumentException("Missing value for " + arg);
+			} else if (arg.equals("--random")) {
+				nRandomStars = parseInt(arg, args[++i]);
+			} else if (arg.equals("--integrator")) {
+				integratorName = args[++i];
+			} else if (arg.equals("--threads")) {
+				nThreads = parseInt(arg, args[++i]);
+			} else if (arg.equals("--frames")) {
+				nFrames = parseInt(arg, args[++i]);
+			} else if (arg.equals("--warmup")) {
+				nWarmupFrames = parseInt(arg, args[++i]);
+			} else if (arg.equals("--dt")) {
+				timeStep = parseFloat(arg, args[++i]);
+			} else if (arg.equals("--steps")) {
+				nSteps = parseInt(arg, args[++i]);
+			} else if (arg.equals("--seed")) {
+				seed = parseInt(arg, args[++i]);
+			} else {
+				throw new IllegalArgumentException("Unknown option " + arg);
+			}
+		}
+
+		if (!Arrays.asList("verlet", "yoshida", "adaptive", "kepler", "nbody")
+				.contains(integratorName)) {
+			throw new IllegalArgumentException("Unknown integrator "
+					+ integratorName);
+		}
+
+		if (input == null && nRandomStars <= 0) {
+			throw new IllegalArgumentException(
+					"Either a csv file or --random should be given");
+		}
+	}
+
+	private static int parseInt(String option, String value) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value for " + option
+					+ ": " + value);
+		}
+	}
+
+	private static float parseFloat(String option, String value) {
+		try {
+			return Float.parseFloat(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value for " + option
+					+ ": " + value);
+		}
+	}
+
+	public void run() throws IOException {
+		StarEngine orbits = createEngine();
+		WorkerPool workers = null;
+
+		if (nThreads > 1) {
+			workers = new WorkerPool(nThreads);
+			orbits.setWorkerPool(workers);
+		}
+
+		double initialEnergy = orbits.getTotalEnergy();
+
+		for (int frame = 0; frame < nWarmupFrames; frame++) {
+			orbits.update(timeStep, nSteps);
+		}
+
+		long startTime = System.nanoTime();
+
+		for (int frame = 0; frame < nFrames; frame++) {
+			orbits.update(timeStep, nSteps);
+		}
+
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+
+		if (workers != null) {
+			workers.shutdown();
+		}
+
+		// Report the speed and how well the conserved quantities were kept
+		long steps = (long) nFrames * nSteps;
+		int nStars = orbits.getStarCount();
+		System.out.println("stars:              " + nStars);
+		System.out.println("integrator:         " + integratorName);
+		System.out.println("threads:            " + nThreads);
+		System.out.println("frames:             " + nFrames + " x " + nSteps
+				+ " steps");
+		System.out.println(String.format("time:               %.3f s",
+				seconds));
+		System.out.println(String.format("frames/sec:         %.1f", nFrames
+				/ seconds));
+
+		if (integratorName.equals("kepler")) {
+			// The Kepler solver jumps to the end of the frame, with one
+			// propagation per star instead of steps and force evaluations
+			System.out.println(String.format("propagations/sec:   %.4g",
+					(double) nFrames * nStars / seconds));
+			System.out.println("force evaluations:  -");
+		} else {
+			System.out.println(String.format("steps/sec:          %.1f",
+					steps / seconds));
+			System.out.println(String.format("star steps/sec:     %.4g",
+					steps * nStars / seconds));
+			System.out.println(String.format("force evaluations:  %d",
+					orbits.getForceEvaluations()));
+		}
+
+		System.out.println(String.format("total energy drift: %.3e",
+				Math.abs((orbits.getTotalEnergy() - initialEnergy)
+						/ initialEnergy)));
+
+		// The energy of each star is only conserved when the stars don't
+		// interact
+		if (orbits instanceof OrbitEngine) {
+			OrbitEngine testOrbits = (OrbitEngine) orbits;
+			double maxEnergyDrift = 0;
+			double meanEnergyDrift = 0;
+			double maxAngMomentumDrift = 0;
+
+			for (int i = 0; i < nStars; i++) {
+				double drift = testOrbits.getEnergyDrift(i);
+				maxEnergyDrift = Math.max(maxEnergyDrift, drift);
+				meanEnergyDrift += drift / nStars;
+				maxAngMomentumDrift = Math.max(maxAngMomentumDrift,
+						testOrbits.getAngMomentumDrift(i));
+			}
+
+			System.out.println(String.format("energy drift:       %.3e max, "
+					+ "%.3e mean", maxEnergyDrift, meanEnergyDrift));
+			System.out.println(String.format("ang. mom. drift:    %.3e max",
+					maxAngMomentumDrift));
+		}
+	}
+
+	private StarEngine createEngine() throws IOException {
+		Table table = null;
+		int nStars = nRandomStars;
+
+		if (input != null) {
+			File file = new File(input);
+
+			if (!file.isFile()) {
+				throw new FileNotFoundException(input);
+			}
+
+			table = new Table(file, "header");
+			nStars = table.getRowCount();
+		}
+
+		StarEngine orbits;
+
+		if (integratorName.equals("nbody")) {
+			orbits = new NBodyEngine(nStars, BH_MASS, STAR_MASS);
+		} else {
+			OrbitEngine testOrbits = new OrbitEngine(nStars, BH_MASS);
+
+			if (integratorName.equals("verlet")) {
+				testOrbits.setIntegrator(SymplecticIntegrator.verlet());
+			} else if (integratorName.equals("yoshida")) {
+				testOrbits.setIntegrator(SymplecticIntegrator.yoshida());
+			} else if (integratorName.equals("adaptive")) {
+				testOrbits.setIntegrator(SymplecticIntegrator.yoshida()
+						.adaptive(0.02f, 1000));
+			} else if (integratorName.equals("kepler")) {
+				testOrbits.setIntegrator(new KeplerIntegrator(nStars));
+			} else {
+				throw new IllegalArgumentException("Unknown integrator "
+						+ integratorName);
+			}
+
+			orbits = testOrbits;
+		}
+
+		if (table != null) {
+			for (int i = 0; i < nStars; i++) {
+				PVector pos = new PVector(table.getFloat(i, "x"),
+						table.getFloat(i, "y"), table.getFloat(i, "z"));
+				PVector vel = new PVector(table.getFloat(i, "vx"),
+						table.getFloat(i, "vy"), table.getFloat(i, "vz"));
+				pos.mult(SCALING);
+				vel.mult(SCALING);
+				orbits.addStar(pos, vel);
+			}
+		} else {
+			addRandomStars(orbits, nStars, seed);
+		}
+
+		return orbits;
+	}
+
+	public static void addRandomStars(StarEngine orbits, int nStars,
+			long seed) {
+		// Bound orbits with random orientations and eccentricities, with
+		// sizes similar to the ones of the S-stars
+		Random random = new Random(seed);
+		PVector pos = new PVector();
+		PVector vel = new PVector();
+
+		for (int i = 0; i < nStars; i++) {
+			float r = 20 + 280 * random.nextFloat();
+			float speed = (float) Math.sqrt(BH_MASS / r)
+					* (0.5f + 0.8f * random.nextFloat());
+			randomDirection(random, pos);
+			randomDirection(random, vel);
+
+			// Remove the radial part of the velocity
+			vel.sub(PVector.mult(pos, vel.dot(pos)));
+			vel.normalize();
+			pos.mult(r);
+			vel.mult(speed);
+			orbits.addStar(pos, vel);
+		}
+	}
+
+	private static void randomDirection(Random random, PVector target) {
+		double cosTheta = 2 * random.nextDouble() - 1;
+		double sinTheta = Math.sqrt(1 - cosTheta * cosTheta);
+		double phi = 2 * Math.PI * random.nextDouble();
+		target.set((float) (sinTheta * Math.cos(phi)),
+				(float) (sinTheta * Math.sin(phi)), (float) cosTheta);
+	}
+}
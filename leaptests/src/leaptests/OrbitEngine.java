@@ -0,0 +1,126 @@
+package leaptests;
+
+import processing.core.PVector;
+
+public class OrbitEngine extends StarEngine {
+	// The stars only feel the central mass, so each one can be advanced on
+	// its own, with any integrator
+	private double[] initialEnergy;
+	private double[] initialAngMomentum;
+	private Integrator integrator;
+
+	public OrbitEngine(int capacity, float mass) {
+		super(capacity, mass);
+		initialEnergy = new double[capacity];
+		initialAngMomentum = new double[3 * capacity];
+
+		// Use velocity Verlet by default
+		integrator = SymplecticIntegrator.verlet();
+	}
+
+	OrbitEngine(OrbitEngine other) {
+		// Copy of the star state for OrbitEphemeris, which advances it on
+		// its own thread with its own integrator. The integrator is not
+		// shared, because the integrators can keep per-star state
+		super(other);
+		initialEnergy = other.initialEnergy.clone();
+		initialAngMomentum = other.initialAngMomentum.clone();
+		integrator = SymplecticIntegrator.verlet();
+	}
+
+	public int addStar(PVector pos, PVector vel) {
+		int index = super.addStar(pos, vel);
+
+		// Save the conserved quantities to be able to monitor the drifts
+		initialEnergy[index] = getEnergy(index);
+		getAngMomentum(index, initialAngMomentum, 3 * index);
+
+		return index;
+	}
+
+	public void update(final float dt, final int iterations) {
+		// The stars orbit independently, so each worker can advance its own
+		// range of stars
+		runTask(new WorkerPool.RangeTask() {
+			public void run(int from, int to) {
+				update(from, to, dt, iterations);
+			}
+		});
+
+		advanceTime((double) dt * iterations);
+	}
+
+	public void seek(final double newTime) {
+		if (!(integrator instanceof AnalyticIntegrator)) {
+			throw new IllegalStateException(
+					"Seeking requires an analytic integrator");
+		}
+
+		final AnalyticIntegrator analytic = (AnalyticIntegrator) integrator;
+
+		runTask(new WorkerPool.RangeTask() {
+			public void run(int from, int to) {
+				for (int i = from; i < to; i++) {
+					analytic.propagate(OrbitEngine.this, i, newTime);
+				}
+			}
+		});
+
+		setTime(newTime);
+	}
+
+	public void update(int from, int to, float dt, int iterations) {
+		for (int i = from; i < to; i++) {
+			integrator.advance(this, i, dt, iterations);
+		}
+	}
+
+	public void setIntegrator(Integrator integrator) {
+		this.integrator = integrator;
+	}
+
+	public Integrator getIntegrator() {
+		return integrator;
+	}
+
+	public double getEnergy(int i) {
+		double r = Math.sqrt(x[i] * x[i] + y[i] * y[i] + z[i] * z[i]);
+		double vSq = vx[i] * vx[i] + vy[i] * vy[i] + vz[i] * vz[i];
+		return vSq / 2 - getMass() / r;
+	}
+
+	public double getTotalEnergy() {
+		// Sum of the star energies per unit mass
+		double energy = 0;
+
+		for (int i = 0; i < getStarCount(); i++) {
+			energy += getEnergy(i);
+		}
+
+		return energy;
+	}
+
+	public double[] getAngMomentum(int i, double[] target, int offset) {
+		target[offset] = y[i] * vz[i] - z[i] * vy[i];
+		target[offset + 1] = z[i] * vx[i] - x[i] * vz[i];
+		target[offset + 2] = x[i] * vy[i] - y[i] * vx[i];
+		return target;
+	}
+
+	public double getEnergyDrift(int i) {
+		// Relative change of the energy since the star was added
+		return Math.abs((getEnergy(i) - initialEnergy[i]) / initialEnergy[i]);
+	}
+
+	public double getAngMomentumDrift(int i) {
+		// Relative change of the angular momentum since the star was added
+		double lx0 = initialAngMomentum[3 * i];
+		double ly0 = initialAngMomentum[3 * i + 1];
+		double lz0 = initialAngMomentum[3 * i + 2];
+		double dlx = y[i] * vz[i] - z[i] * vy[i] - lx0;
+		double dly = z[i] * vx[i] - x[i] * vz[i] - ly0;
+		double dlz = x[i] * vy[i] - y[i] * vx[i] - lz0;
+		return Math.sqrt((dlx * dlx + dly * dly + dlz * dlz)
+				/ (lx0 * lx0 + ly0 * ly0 + lz0 * lz0));
+	}
+}
@@ -0,0 +1,198 @@
+package leaptests;
+
+import processing.core.PVector;
+
+public class OrbitEphemeris {
+	private OrbitEngine orbits;
+	private Integrator integrator;
+	private int nStars;
+	private int nSamples;
+	private double unboundSpan;
+	private double epoch;
+	private double[] span;
+	private boolean[] periodic;
+	private float[] x;
+	private float[] y;
+	private float[] z;
+	private float[] vx;
+	private float[] vy;
+	private float[] vz;
+	private volatile boolean ready;
+	private volatile boolean stopped;
+	private Thread thread;
+
+	public OrbitEphemeris(OrbitEngine orbits, Integrator integrator,
+			int nSamples, double unboundSpan) {
+		// Take a copy of the current state, so the engine can keep running
+		// while the ephemeris is built
+		this.orbits = new OrbitEngine(orbits);
+		this.integrator = integrator;
+		this.nStars = orbits.getStarCount();
+		this.nSamples = nSamples;
+		this.unboundSpan = unboundSpan;
+		this.epoch = orbits.getTime();
+
+		span = new double[nStars];
+		periodic = new boolean[nStars];
+		x = new float[nStars * (nSamples + 1)];
+		y = new float[x.length];
+		z = new float[x.length];
+		vx = new float[x.length];
+		vy = new float[x.length];
+		vz = new float[x.length];
+		ready = false;
+		stopped = false;
+	}
+
+	public void startBuilding() {
+		thread = new Thread(new Runnable() {
+			public void run() {
+				build();
+			}
+		}, "ephemeris");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void stopBuilding() {
+		// The build stops before the next star and the ephemeris never
+		// becomes ready
+		stopped = true;
+
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	public void build() {
+		double mass = orbits.getMass();
+
+		for (int i = 0; i < nStars; i++) {
+			if (stopped) {
+				return;
+			}
+
+			// Bound stars are sampled along one full period and the table is
+			// used periodically. Unbound stars are sampled during a fixed
+			// time span
+			double inverseA = 2 / Math.sqrt(orbits.x[i] * orbits.x[i]
+					+ orbits.y[i] * orbits.y[i] + orbits.z[i] * orbits.z[i])
+					- (orbits.vx[i] * orbits.vx[i] + orbits.vy[i]
+							* orbits.vy[i] + orbits.vz[i] * orbits.vz[i])
+					/ mass;
+			periodic[i] = inverseA > 0;
+			span[i] = periodic[i] ? 2 * Math.PI
+					* Math.sqrt(1 / (inverseA * inverseA * inverseA * mass))
+					: unboundSpan;
+
+			double h = span[i] / nSamples;
+			int offset = i * (nSamples + 1);
+			saveSample(i, offset);
+
+			for (int k = 1; k <= nSamples; k++) {
+				if (integrator instanceof AnalyticIntegrator) {
+					((AnalyticIntegrator) integrator).propagate(orbits, i,
+							epoch + k * h);
+				} else {
+					// Numerical integrators are called once per sample, so
+					// they should adapt their own steps
+					integrator.advance(orbits, i, (float) h, 1);
+				}
+
+				saveSample(i, offset + k);
+			}
+		}
+
+		ready = true;
+	}
+
+	private void saveSample(int i, int sample) {
+		x[sample] = (float) orbits.x[i];
+		y[sample] = (float) orbits.y[i];
+		z[sample] = (float) orbits.z[i];
+		vx[sample] = (float) orbits.vx[i];
+		vy[sample] = (float) orbits.vy[i];
+		vz[sample] = (float) orbits.vz[i];
+	}
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	private double locate(int index, double time) {
+		// Returns the sample position, including the fraction between the
+		// two samples around the given time
+		double h = span[index] / nSamples;
+		double t = time - epoch;
+
+		if (periodic[index]) {
+			t -= span[index] * Math.floor(t / span[index]);
+		} else {
+			t = Math.max(0, Math.min(t, span[index]));
+		}
+
+		return index * (nSamples + 1) + Math.min(t / h, nSamples);
+	}
+
+	public void interpolate(OrbitEngine target, int index, double time) {
+		double samplePos = locate(index, time);
+		int s0 = Math.min((int) samplePos, (index + 1) * (nSamples + 1) - 2);
+		int s1 = s0 + 1;
+		double u = samplePos - s0;
+		double h = span[index] / nSamples;
+
+		// Cubic Hermite interpolation, using the velocities as the
+		// derivatives at both samples
+		double uSq = u * u;
+		double uCube = uSq * u;
+		double h00 = 2 * uCube - 3 * uSq + 1;
+		double h10 = (uCube - 2 * uSq + u) * h;
+		double h01 = -2 * uCube + 3 * uSq;
+		double h11 = (uCube - uSq) * h;
+		double d00 = (6 * uSq - 6 * u) / h;
+		double d10 = 3 * uSq - 4 * u + 1;
+		double d01 = -d00;
+		double d11 = 3 * uSq - 2 * u;
+
+		target.x[index] = h00 * x[s0] + h10 * vx[s0] + h01 * x[s1] + h11
+				* vx[s1];
+		target.y[index] = h00 * y[s0] + h10 * vy[s0] + h01 * y[s1] + h11
+				* vy[s1];
+		target.z[index] = h00 * z[s0] + h10 * vz[s0] + h01 * z[s1] + h11
+				* vz[s1];
+		target.vx[index] = d00 * x[s0] + d10 * vx[s0] + d01 * x[s1] + d11
+				* vx[s1];
+		target.vy[index] = d00 * y[s0] + d10 * vy[s0] + d01 * y[s1] + d11
+				* vy[s1];
+		target.vz[index] = d00 * z[s0] + d10 * vz[s0] + d01 * z[s1] + d11
+				* vz[s1];
+	}
+
+	public PVector getPos(int index, double time, PVector target) {
+		double samplePos = locate(index, time);
+		int s0 = Math.min((int) samplePos, (index + 1) * (nSamples + 1) - 2);
+		int s1 = s0 + 1;
+		double u = samplePos - s0;
+		double h = span[index] / nSamples;
+		double uSq = u * u;
+		double uCube = uSq * u;
+		double h00 = 2 * uCube - 3 * uSq + 1;
+		double h10 = (uCube - 2 * uSq + u) * h;
+		double h01 = -2 * uCube + 3 * uSq;
+		double h11 = (uCube - uSq) * h;
+
+		target.set((float) (h00 * x[s0] + h10 * vx[s0] + h01 * x[s1] + h11
+				* vx[s1]), (float) (h00 * y[s0] + h10 * vy[s0] + h01 * y[s1]
+				+ h11 * vy[s1]), (float) (h00 * z[s0] + h10 * vz[s0] + h01
+				* z[s1] + h11 * vz[s1]));
+		return target;
+	}
+
+	public double getSpan(int index) {
+		return span[index];
+	}
+
+	public int getSampleCount() {
+		return nSamples;
+	}
+}
@@ -1,6 +1,8 @@
+package leaptests;
+
 import processing.core.PApplet;
 
-public class OrientedApplet extends PApplet {
+public class OrientedApplet extends PApplet implements View, NoiseSource {
 	private static final long serialVersionUID = 1L;
 
 	protected float xAng = 0;
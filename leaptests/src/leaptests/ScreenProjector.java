@@ -0,0 +1,174 @@
+package leaptests;
+
+import processing.core.PGraphics;
+import processing.core.PMatrix3D;
+import processing.core.PVector;
+import processing.opengl.PGraphicsOpenGL;
+
+public class ScreenProjector {
+	private StarEngine orbits;
+	private BlackHole bh;
+	private View view;
+	private int width;
+	private int height;
+	private float zoom;
+	private PMatrix3D matrix;
+	private float[] screenX;
+	private float[] screenY;
+	private float[] screenZ;
+	private PMatrix3D clip;
+	private float[] ndcX;
+	private float[] ndcY;
+	private float[] pixelScale;
+
+	public ScreenProjector(StarEngine orbits, BlackHole bh, View view,
+			int width, int height) {
+		// The width and height are the viewport size in pixels
+		this.orbits = orbits;
+		this.bh = bh;
+		this.view = view;
+		this.width = width;
+		this.height = height;
+		zoom = view.getZoom();
+
+		matrix = new PMatrix3D();
+		screenX = new float[orbits.getCapacity()];
+		screenY = new float[orbits.getCapacity()];
+		screenZ = new float[orbits.getCapacity()];
+		clip = new PMatrix3D();
+		ndcX = new float[orbits.getCapacity()];
+		ndcY = new float[orbits.getCapacity()];
+		pixelScale = new float[orbits.getCapacity()];
+	}
+
+	public void update(PGraphics renderer) {
+		// Build the view transformation once per frame. It's the same
+		// transformation that the stars used to apply on the matrix stack
+		PVector bhPos = bh.getPos();
+		zoom = view.getZoom();
+		matrix.reset();
+		matrix.translate(bhPos.x, bhPos.y, bhPos.z);
+		matrix.rotateX(view.getXAng());
+		matrix.rotateY(view.getYAng());
+		matrix.scale(zoom);
+
+		// Transform all the star positions. The matrix elements are copied to
+		// local variables to keep them in registers inside the loop
+		float m00 = matrix.m00;
+		float m01 = matrix.m01;
+		float m02 = matrix.m02;
+		float m03 = matrix.m03;
+		float m10 = matrix.m10;
+		float m11 = matrix.m11;
+		float m12 = matrix.m12;
+		float m13 = matrix.m13;
+		float m20 = matrix.m20;
+		float m21 = matrix.m21;
+		float m22 = matrix.m22;
+		float m23 = matrix.m23;
+		double[] x = orbits.x;
+		double[] y = orbits.y;
+		double[] z = orbits.z;
+
+		for (int i = 0; i < orbits.getStarCount(); i++) {
+			float px = (float) x[i];
+			float py = (float) y[i];
+			float pz = (float) z[i];
+			screenX[i] = m00 * px + m01 * py + m02 * pz + m03;
+			screenY[i] = m10 * px + m11 * py + m12 * pz + m13;
+			screenZ[i] = m20 * px + m21 * py + m22 * pz + m23;
+		}
+
+		// Find where the stars end up in the viewport. Without an OpenGL
+		// renderer, or without a renderer, there is no camera
+		if (renderer instanceof PGraphicsOpenGL) {
+			PGraphicsOpenGL pg = (PGraphicsOpenGL) renderer;
+			clip.set(pg.projection);
+			clip.apply(pg.camera);
+			project(Math.abs(pg.projection.m11) * pg.height / 2);
+		} else {
+			// The screen position is already in pixels without a camera
+			for (int i = 0; i < orbits.getStarCount(); i++) {
+				ndcX[i] = 2 * screenX[i] / width - 1;
+				ndcY[i] = 2 * screenY[i] / height - 1;
+				pixelScale[i] = 1;
+			}
+		}
+	}
+
+	private void project(float focalLength) {
+		float c00 = clip.m00;
+		float c01 = clip.m01;
+		float c02 = clip.m02;
+		float c03 = clip.m03;
+		float c10 = clip.m10;
+		float c11 = clip.m11;
+		float c12 = clip.m12;
+		float c13 = clip.m13;
+		float c30 = clip.m30;
+		float c31 = clip.m31;
+		float c32 = clip.m32;
+		float c33 = clip.m33;
+
+		for (int i = 0; i < orbits.getStarCount(); i++) {
+			float sx = screenX[i];
+			float sy = screenY[i];
+			float sz = screenZ[i];
+			float w = c30 * sx + c31 * sy + c32 * sz + c33;
+
+			if (w > 0) {
+				ndcX[i] = (c00 * sx + c01 * sy + c02 * sz + c03) / w;
+				ndcY[i] = (c10 * sx + c11 * sy + c12 * sz + c13) / w;
+				pixelScale[i] = focalLength / w;
+			} else {
+				// The star is behind the camera
+				ndcX[i] = Float.POSITIVE_INFINITY;
+				ndcY[i] = Float.POSITIVE_INFINITY;
+				pixelScale[i] = 0;
+			}
+		}
+	}
+
+	public boolean isVisible(int i, float pixelRadius) {
+		// Check if a sprite of the given radius overlaps the viewport
+		float marginX = 2 * pixelRadius / width;
+		float marginY = 2 * pixelRadius / height;
+		return Math.abs(ndcX[i]) <= 1 + marginX
+				&& Math.abs(ndcY[i]) <= 1 + marginY;
+	}
+
+	public float getPixelScale(int i) {
+		// Number of pixels covered by one unit at the star position
+		return pixelScale[i];
+	}
+
+	public PMatrix3D getMatrix() {
+		return matrix;
+	}
+
+	public float getZoom() {
+		// Zoom used in the last update
+		return zoom;
+	}
+
+	public PVector getScreenPos(int i, PVector target) {
+		target.set(screenX[i], screenY[i], screenZ[i]);
+		return target;
+	}
+
+	public float getScreenX(int i) {
+		return screenX[i];
+	}
+
+	public float getScreenY(int i) {
+		return screenY[i];
+	}
+
+	public float getScreenZ(int i) {
+		return screenZ[i];
+	}
+
+	public StarEngine getOrbits() {
+		return orbits;
+	}
+}
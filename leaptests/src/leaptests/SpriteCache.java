@@ -0,0 +1,73 @@
+package leaptests;
+
+import java.util.HashMap;
+import processing.core.PApplet;
+import processing.core.PConstants;
+import processing.core.PImage;
+
+public class SpriteCache implements PConstants {
+	public enum Gradient {
+		STAR, BLACK_HOLE
+	}
+
+	private static HashMap<String, PImage> sprites = new HashMap<String, PImage>();
+
+	public static synchronized PImage get(Gradient gradient, float radius) {
+		// Identical sprites are created only once and shared, so the
+		// renderer also uploads them only once. The images don't need an
+		// applet, the renderer sets it when it creates the texture
+		String key = gradient + ":" + radius;
+		PImage sprite = sprites.get(key);
+
+		if (sprite == null) {
+			if (gradient == Gradient.STAR) {
+				sprite = createStarSprite(radius);
+			} else {
+				sprite = createBlackHoleSprite(radius);
+			}
+
+			sprites.put(key, sprite);
+		}
+
+		return sprite;
+	}
+
+	private static PImage createStarSprite(float radius) {
+		PImage img = new PImage((int) (6 * radius), (int) (6 * radius), ARGB);
+
+		img.loadPixels();
+		for (int y = 0; y < img.height; y++) {
+			for (int x = 0; x < img.width; x++) {
+				float relDistSq = (PApplet.sq(x - img.width / 2f) + PApplet
+						.sq(y - img.height / 2f)) / PApplet.sq(radius);
+				float grey = PApplet.max(0, 255 * (1 - relDistSq));
+				float alpha = PApplet.max(0,
+						PApplet.min(255, 255 * (1.2f - relDistSq)));
+				img.pixels[x + y * img.width] = Colors.grey(grey, alpha);
+			}
+		}
+		img.updatePixels();
+
+		return img;
+	}
+
+	private static PImage createBlackHoleSprite(float radius) {
+		PImage img = new PImage((int) (4 * radius), (int) (4 * radius), ARGB);
+
+		img.loadPixels();
+		for (int y = 0; y < img.height; y++) {
+			for (int x = 0; x < img.width; x++) {
+				float relDist = PApplet.sqrt(PApplet.sq(x - img.width / 2f)
+						+ PApplet.sq(y - img.height / 2f))
+						/ radius;
+				float grey = 0;
+				float alpha = PApplet.max(0,
+						PApplet.min(255, 255 * (1.3f - relDist)));
+				img.pixels[x + y * img.width] = Colors.grey(grey, alpha);
+			}
+		}
+		img.updatePixels();
+
+		return img;
+	}
+}
@@ -0,0 +1,197 @@
+package leaptests;
+
+import processing.core.PApplet;
+import processing.core.PConstants;
+import processing.core.PImage;
+import processing.core.PVector;
+
+public class Star implements PConstants {
+	// Sprite sizes in pixels below which the flares are not visible and the
+	// star can be drawn as a simple point
+	private static final float FLARES_MIN_SIZE = 16;
+	private static final float POINT_MAX_SIZE = 6;
+
+	// Same as color(100, 100, 255)
+	private static final int TRAIL_COLOR = 0xff6464ff;
+
+	private StarEngine orbits;
+	private ScreenProjector projector;
+	private int index;
+	private PVector screenPos;
+	private boolean visible;
+	private float pixelSize;
+	private float radius;
+	private PImage img;
+	private PImage flaresImg;
+	private FlareGenerator flares;
+	private int[] flaresGrey;
+	private boolean flaresImgEnabled;
+	private float noiseSeed;
+	private TrailBuffer trail;
+	private TrailShape trailShape;
+
+	public Star(ScreenProjector projector, int index, NoiseSource noise,
+			float noiseSeed) {
+		// The noise animates the flares, starting at the given seed
+		orbits = projector.getOrbits();
+		this.projector = projector;
+		this.index = index;
+
+		// Calculate the current position of the star in the screen
+		screenPos = new PVector();
+		calculateScreenPos();
+
+		// Get the image that will be used to draw the star
+		radius = 10;
+		img = SpriteCache.get(SpriteCache.Gradient.STAR, radius);
+		calculateVisibility();
+
+		// Create the flares image and the seed for the flares
+		flaresImg = new PImage(img.width, img.height, ARGB);
+		flares = FlareGenerator.get(noise, img.width, img.height, radius);
+		flaresGrey = flares.createBuffer();
+		flaresImgEnabled = true;
+		this.noiseSeed = noiseSeed;
+
+		// Create the buffer that will save the trail points
+		setTrail(1000, 6);
+	}
+
+	public void update() {
+		// The coordinates are advanced by the orbit engine. Add the point to
+		// the trail if necessary
+		if (trail.sample(orbits.getX(index), orbits.getY(index),
+				orbits.getZ(index)) && trailShape != null) {
+			trailShape.append(trail);
+		}
+
+		// Get the position of the point on the screen. The projector has
+		// already transformed all the stars for this frame
+		calculateScreenPos();
+		calculateVisibility();
+
+		// Update the flares image. It's not needed when the flares are
+		// drawn by the star field shader, or when they would not be seen
+		noiseSeed += 0.1;
+
+		if (flaresImgEnabled && visible && pixelSize >= FLARES_MIN_SIZE) {
+			updateFlaresImage();
+		}
+	}
+
+	protected void calculateScreenPos() {
+		projector.getScreenPos(index, screenPos);
+	}
+
+	protected void calculateVisibility() {
+		// Size of the star image on the screen, and whether it overlaps the
+		// viewport
+		pixelSize = projector.getPixelScale(index) * img.width
+				* projector.getZoom();
+		visible = projector.isVisible(index, pixelSize / 2);
+	}
+
+	protected void updateFlaresImage() {
+		// Prepare the flares image for the next iteration
+		flares.update(flaresGrey, noiseSeed, flaresImg);
+	}
+
+	public void draw(OrientedApplet parent) {
+		if (!visible) {
+			return;
+		}
+
+		if (pixelSize < POINT_MAX_SIZE) {
+			// Only the bright core of the star can be seen at this size
+			parent.pushStyle();
+			parent.stroke(255);
+			parent.strokeWeight(Math.max(1, pixelSize / 3));
+			parent.point(screenPos.x, screenPos.y, screenPos.z);
+			parent.popStyle();
+			return;
+		}
+
+		parent.pushMatrix();
+		parent.pushStyle();
+		parent.imageMode(CENTER);
+		parent.translate(screenPos.x, screenPos.y, screenPos.z);
+		parent.scale(parent.getZoom());
+		parent.image(img, 0, 0);
+		parent.image(flaresImg, 0, 0);
+		parent.popStyle();
+		parent.popMatrix();
+	}
+
+	public void drawTrail(PApplet parent) {
+		// Retained shapes are only available with the OpenGL renderers. The
+		// shape is created the first time the trail is drawn, so the stars
+		// don't need it when the trails are hidden
+		if (trailShape == null && parent.g.isGL()) {
+			trailShape = new TrailShape(parent, trail.getCapacity(),
+					TRAIL_COLOR, 1);
+			trailShape.set(trail);
+		}
+
+		if (trail.size() > 4) {
+			parent.pushMatrix();
+			parent.pushStyle();
+			parent.stroke(TRAIL_COLOR);
+			parent.strokeWeight(1);
+			parent.applyMatrix(projector.getMatrix());
+
+			if (trailShape != null) {
+				// Draw the retained trail geometry in one call
+				trailShape.draw(parent);
+			} else {
+				for (int i = 0; i < trail.size() - 4; i++) {
+					parent.line(trail.getX(i), trail.getY(i), trail.getZ(i),
+							trail.getX(i + 1), trail.getY(i + 1),
+							trail.getZ(i + 1));
+				}
+			}
+			parent.popStyle();
+			parent.popMatrix();
+		}
+	}
+
+	public void clearTrail() {
+		trail.clear();
+
+		if (trailShape != null) {
+			trailShape.clear();
+		}
+	}
+
+	public void setTrail(int length, int interval) {
+		trail = new TrailBuffer(length, interval);
+		trailShape = null;
+	}
+
+	public PVector getScreenPos() {
+		return screenPos;
+	}
+
+	public boolean isVisible() {
+		return visible;
+	}
+
+	public float getPixelSize() {
+		return pixelSize;
+	}
+
+	public void setFlaresImgEnabled(boolean enabled) {
+		flaresImgEnabled = enabled;
+	}
+
+	public float getRadius() {
+		return radius;
+	}
+
+	public float getNoiseSeed() {
+		return noiseSeed;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+}
@@ -0,0 +1,148 @@
+package leaptests;
+
+import processing.core.PVector;
+
+public abstract class StarEngine {
+	// The star coordinates are kept in flat arrays, one entry per star
+	double[] x;
+	double[] y;
+	double[] z;
+	double[] vx;
+	double[] vy;
+	double[] vz;
+	long[] forceEvaluations;
+	private int count;
+	private double mass;
+	private double time;
+	private WorkerPool workers;
+
+	public StarEngine(int capacity, float mass) {
+		this.mass = mass;
+
+		x = new double[capacity];
+		y = new double[capacity];
+		z = new double[capacity];
+		vx = new double[capacity];
+		vy = new double[capacity];
+		vz = new double[capacity];
+		forceEvaluations = new long[capacity];
+		count = 0;
+		time = 0;
+	}
+
+	StarEngine(StarEngine other) {
+		// Copy of the star state. The worker pool is not shared, and the
+		// force evaluations start from zero so they only count the work
+		// done on the copy
+		mass = other.mass;
+		x = other.x.clone();
+		y = other.y.clone();
+		z = other.z.clone();
+		vx = other.vx.clone();
+		vy = other.vy.clone();
+		vz = other.vz.clone();
+		forceEvaluations = new long[x.length];
+		count = other.count;
+		time = other.time;
+	}
+
+	public int addStar(PVector pos, PVector vel) {
+		if (count == x.length) {
+			throw new IllegalStateException("The engine is full (" + x.length
+					+ " stars)");
+		}
+
+		x[count] = pos.x;
+		y[count] = pos.y;
+		z[count] = pos.z;
+		vx[count] = vel.x;
+		vy[count] = vel.y;
+		vz[count] = vel.z;
+		count++;
+
+		return count - 1;
+	}
+
+	// Advances all the stars by iterations steps of dt
+	public abstract void update(float dt, int iterations);
+
+	// Energy of the whole system, to monitor the integration
+	public abstract double getTotalEnergy();
+
+	void advanceTime(double dt) {
+		time += dt;
+	}
+
+	void setTime(double time) {
+		this.time = time;
+	}
+
+	void runTask(WorkerPool.RangeTask task) {
+		// Runs the task over all the stars, in parallel if there is a pool
+		if (workers == null) {
+			task.run(0, count);
+		} else {
+			workers.run(count, task);
+		}
+	}
+
+	public void setWorkerPool(WorkerPool workers) {
+		this.workers = workers;
+	}
+
+	public WorkerPool getWorkerPool() {
+		return workers;
+	}
+
+	public double getTime() {
+		return time;
+	}
+
+	public int getCapacity() {
+		return x.length;
+	}
+
+	public int getStarCount() {
+		return count;
+	}
+
+	public float getMass() {
+		return (float) mass;
+	}
+
+	public float getX(int i) {
+		return (float) x[i];
+	}
+
+	public float getY(int i) {
+		return (float) y[i];
+	}
+
+	public float getZ(int i) {
+		return (float) z[i];
+	}
+
+	public PVector getPos(int i, PVector target) {
+		target.set((float) x[i], (float) y[i], (float) z[i]);
+		return target;
+	}
+
+	public PVector getVel(int i, PVector target) {
+		target.set((float) vx[i], (float) vy[i], (float) vz[i]);
+		return target;
+	}
+
+	public long getForceEvaluations(int i) {
+		return forceEvaluations[i];
+	}
+
+	public long getForceEvaluations() {
+		long total = 0;
+
+		for (int i = 0; i < count; i++) {
+			total += forceEvaluations[i];
+		}
+
+		return total;
+	}
+}
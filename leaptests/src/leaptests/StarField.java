@@ -0,0 +1,141 @@
+package leaptests;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import processing.core.PApplet;
+import processing.core.PConstants;
+import processing.core.PVector;
+import processing.opengl.PGL;
+import processing.opengl.PGraphicsOpenGL;
+import processing.opengl.PShader;
+
+public class StarField implements PConstants {
+	// Position, size, kind and flare phase of every sprite
+	private static final int STRIDE = 6;
+	private static final float STAR = 0;
+	private static final float BLACK_HOLE = 1;
+
+	// OpenGL constants that PGL doesn't define
+	private static final int PROGRAM_POINT_SIZE = 0x8642;
+	private static final int POINT_SPRITE = 0x8861;
+
+	private OrientedApplet parent;
+	private PShader shader;
+	private FloatBuffer sprites;
+	private int capacity;
+	private int vbo;
+	private int positionLoc;
+	private int paramsLoc;
+
+	public StarField(OrientedApplet parent, int capacity) {
+		this.parent = parent;
+		this.capacity = capacity;
+		vbo = -1;
+
+		// The point sprites need a shader, and therefore an OpenGL renderer.
+		// Without it, the stars have to be drawn one by one
+		if (parent.g.isGL()) {
+			try {
+				shader = parent.loadShader("starfield.frag", "starfield.vert");
+			} catch (RuntimeException e) {
+				PApplet.println("Could not load the star field shader: "
+						+ e.getMessage());
+				shader = null;
+			}
+		}
+
+		// One extra sprite for the black hole
+		sprites = ByteBuffer.allocateDirect(4 * STRIDE * (capacity + 1))
+				.order(ByteOrder.nativeOrder()).asFloatBuffer();
+	}
+
+	public boolean isAvailable() {
+		return shader != null;
+	}
+
+	public void draw(Star[] stars, int[] order, BlackHole bh) {
+		if (stars.length > capacity) {
+			throw new IllegalArgumentException("The star field can only draw "
+					+ capacity + " stars");
+		}
+
+		// Fill the sprite buffer in drawing order, so the blending is the
+		// same as when the stars are drawn one by one from back to front
+		PVector bhPos = bh.getPos();
+		float zoom = parent.getZoom();
+		boolean bhAdded = false;
+		sprites.clear();
+
+		for (int i = 0; i < stars.length; i++) {
+			Star star = stars[order[i]];
+			PVector screenPos = star.getScreenPos();
+
+			if (screenPos.z > bhPos.z && !bhAdded) {
+				putSprite(bhPos.x, bhPos.y, bhPos.z, 4 * bh.getRadius() * zoom,
+						BLACK_HOLE, 0);
+				bhAdded = true;
+			}
+
+			// Skip the stars that are outside the viewport
+			if (!star.isVisible()) {
+				continue;
+			}
+
+			putSprite(screenPos.x, screenPos.y, screenPos.z, 6
+					* star.getRadius() * zoom, STAR, star.getNoiseSeed());
+		}
+
+		int nSprites = sprites.position() / STRIDE;
+		sprites.flip();
+
+		// Pixels per model unit at a distance of one, from the projection
+		PGraphicsOpenGL pg = (PGraphicsOpenGL) parent.g;
+		float pointScale = Math.abs(pg.projection.m11) * pg.height / 2;
+		float starRadius = stars.length > 0 ? stars[0].getRadius() : 0;
+
+		shader.set("starTransform", pg.projmodelview);
+		shader.set("pointScale", pointScale);
+		shader.set("starRadius", starRadius);
+
+		// Send all the sprites at once and draw them with a single call
+		PGL pgl = pg.beginPGL();
+		shader.bind();
+
+		if (vbo == -1) {
+			IntBuffer buffers = IntBuffer.allocate(1);
+			pgl.genBuffers(1, buffers);
+			vbo = buffers.get(0);
+			positionLoc = pgl.getAttribLocation(shader.glProgram,
+					"starPosition");
+			paramsLoc = pgl.getAttribLocation(shader.glProgram, "starParams");
+		}
+
+		pgl.enable(PROGRAM_POINT_SIZE);
+		pgl.enable(POINT_SPRITE);
+		pgl.bindBuffer(PGL.ARRAY_BUFFER, vbo);
+		pgl.bufferData(PGL.ARRAY_BUFFER, 4 * STRIDE * nSprites, sprites,
+				PGL.STREAM_DRAW);
+		pgl.enableVertexAttribArray(positionLoc);
+		pgl.enableVertexAttribArray(paramsLoc);
+		pgl.vertexAttribPointer(positionLoc, 3, PGL.FLOAT, false, 4 * STRIDE,
+				0);
+		pgl.vertexAttribPointer(paramsLoc, 3, PGL.FLOAT, false, 4 * STRIDE,
+				4 * 3);
+		pgl.drawArrays(PGL.POINTS, 0, nSprites);
+		pgl.disableVertexAttribArray(positionLoc);
+		pgl.disableVertexAttribArray(paramsLoc);
+		pgl.bindBuffer(PGL.ARRAY_BUFFER, 0);
+		pgl.disable(POINT_SPRITE);
+		pgl.disable(PROGRAM_POINT_SIZE);
+
+		shader.unbind();
+		pg.endPGL();
+	}
+
+	private void putSprite(float x, float y, float z, float size, float kind,
+			float phase) {
+		sprites.put(x).put(y).put(z).put(size).put(kind).put(phase);
+	}
+}
@@ -0,0 +1,124 @@
+package leaptests;
+
+public class SymplecticIntegrator implements Integrator {
+	private double[] kicks;
+	private double[] drifts;
+	private float stepFactor;
+	private int maxSteps;
+
+	public SymplecticIntegrator(double[] kicks, double[] drifts) {
+		this(kicks, drifts, 0, 0);
+	}
+
+	private SymplecticIntegrator(double[] kicks, double[] drifts,
+			float stepFactor, int maxSteps) {
+		if (kicks.length != drifts.length) {
+			throw new IllegalArgumentException(
+					"The kick and drift coefficients should have the same length");
+		}
+
+		this.kicks = kicks.clone();
+		this.drifts = drifts.clone();
+		this.stepFactor = stepFactor;
+		this.maxSteps = maxSteps;
+	}
+
+	public static SymplecticIntegrator verlet() {
+		// Kick-drift-kick velocity Verlet, second order
+		return new SymplecticIntegrator(new double[] { 0.5, 0.5 },
+				new double[] { 1, 0 });
+	}
+
+	public static SymplecticIntegrator yoshida() {
+		// Yoshida's composition of three Verlet steps, fourth order
+		double cbrt2 = Math.cbrt(2);
+		double w1 = 1 / (2 - cbrt2);
+		double w0 = -cbrt2 * w1;
+
+		return new SymplecticIntegrator(new double[] { w1 / 2,
+				(w0 + w1) / 2, (w0 + w1) / 2, w1 / 2 }, new double[] { w1, w0,
+				w1, 0 });
+	}
+
+	public SymplecticIntegrator adaptive(float stepFactor, int maxSteps) {
+		// The step will be the given fraction of the local orbital time
+		// scale, sqrt(r^3 / GM), with at most maxSteps steps per advance call
+		return new SymplecticIntegrator(kicks, drifts, stepFactor, maxSteps);
+	}
+
+	public boolean isAdaptive() {
+		return stepFactor > 0;
+	}
+
+	public void advance(OrbitEngine orbits, int index, float dt,
+			int iterations) {
+		double[] x = orbits.x;
+		double[] y = orbits.y;
+		double[] z = orbits.z;
+		double[] vx = orbits.vx;
+		double[] vy = orbits.vy;
+		double[] vz = orbits.vz;
+		double mass = orbits.getMass();
+		double px = x[index];
+		double py = y[index];
+		double pz = z[index];
+		double pvx = vx[index];
+		double pvy = vy[index];
+		double pvz = vz[index];
+
+		// The acceleration is only recalculated after a drift, so the one at
+		// the end of a step is reused at the beginning of the next one
+		double rSq = px * px + py * py + pz * pz;
+		double factor = -mass / (rSq * Math.sqrt(rSq));
+		double ax = factor * px;
+		double ay = factor * py;
+		double az = factor * pz;
+		int evaluations = 1;
+
+		double remainingTime = (double) dt * iterations;
+		double minStep = isAdaptive() ? remainingTime / maxSteps : dt;
+		int nStages = kicks.length;
+
+		for (int step = 0; isAdaptive() ? remainingTime > 0
+				: step < iterations; step++) {
+			double h = dt;
+
+			if (isAdaptive()) {
+				h = stepFactor * Math.sqrt(rSq * Math.sqrt(rSq) / mass);
+				// The last step ends exactly at the target time, even if
+				// it's shorter than the minimum step
+				h = Math.min(Math.max(minStep, h), remainingTime);
+				remainingTime -= h;
+			}
+
+			for (int k = 0; k < nStages; k++) {
+				double kick = kicks[k] * h;
+				pvx += ax * kick;
+				pvy += ay * kick;
+				pvz += az * kick;
+
+				if (drifts[k] != 0) {
+					double drift = drifts[k] * h;
+					px += pvx * drift;
+					py += pvy * drift;
+					pz += pvz * drift;
+
+					rSq = px * px + py * py + pz * pz;
+					factor = -mass / (rSq * Math.sqrt(rSq));
+					ax = factor * px;
+					ay = factor * py;
+					az = factor * pz;
+					evaluations++;
+				}
+			}
+		}
+
+		x[index] = px;
+		y[index] = py;
+		z[index] = pz;
+		vx[index] = pvx;
+		vy[index] = pvy;
+		vz[index] = pvz;
+		orbits.forceEvaluations[index] += evaluations;
+	}
+}
@@ -0,0 +1,203 @@
+package leaptests;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+public class TelemetryExporter {
+	// Converts the binary telemetry files with the same base name, oldest
+	// first, in three csv files, base-frames.csv, base-hands.csv and
+	// base-gestures.csv
+	private static final String FRAME_HEADER = "frameId,timestamp,hands,"
+			+ "fingers,tools,gestures";
+	private static final String HAND_HEADER = "frameId,timestamp,handId,"
+			+ "fingers,sphereRadius,palmX,palmY,palmZ,tipX,tipY,tipZ,"
+			+ "pitch,roll,yaw";
+	private static final String GESTURE_HEADER = "frameId,timestamp,"
+			+ "gestureId,type,state,clockwise,progress,radius,angle,x,y,z,"
+			+ "dirX,dirY,dirZ,speed";
+
+	private PrintWriter frames;
+	private PrintWriter hands;
+	private PrintWriter gestures;
+	private int[] ints;
+	private float[] floats;
+	private long nRecords;
+
+	public static void main(String[] args) {
+		if (args.length != 1) {
+			System.err.println("Usage: java leaptests.TelemetryExporter base");
+			System.err.println("  Converts base-000.bin, base-001.bin... in csv files");
+			System.exit(2);
+		}
+
+		File base = new File(args[0]);
+
+		try {
+			long nRecords = export(base);
+			System.out.println("Exported " + nRecords + " records");
+		} catch (IOException e) {
+			System.err.println("Could not export the telemetry: "
+					+ e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	public static long export(File base) throws IOException {
+		// Returns the number of records exported
+		File[] files = TelemetrySink.listFiles(base);
+
+		if (files.length == 0) {
+			throw new IOException("No telemetry files for " + base.getPath());
+		}
+
+		TelemetryExporter exporter = new TelemetryExporter();
+
+		try {
+			exporter.frames = open(base, "frames", FRAME_HEADER);
+			exporter.hands = open(base, "hands", HAND_HEADER);
+			exporter.gestures = open(base, "gestures", GESTURE_HEADER);
+
+			for (int i = 0; i < files.length; i++) {
+				exporter.read(files[i]);
+			}
+		} finally {
+			exporter.close();
+		}
+
+		return exporter.nRecords;
+	}
+
+	private TelemetryExporter() {
+		ints = new int[TelemetrySink.N_INTS];
+		floats = new float[TelemetrySink.N_FLOATS];
+		nRecords = 0;
+	}
+
+	private static PrintWriter open(File base, String name, String header)
+			throws IOException {
+		PrintWriter writer = new PrintWriter(new BufferedWriter(
+				new FileWriter(base.getPath() + "-" + name + ".csv"), 1 << 16));
+		writer.println(header);
+		return writer;
+	}
+
+	private void close() throws IOException {
+		boolean failed = false;
+
+		if (frames != null) {
+			frames.close();
+			failed |= frames.checkError();
+		}
+
+		if (hands != null) {
+			hands.close();
+			failed |= hands.checkError();
+		}
+
+		if (gestures != null) {
+			gestures.close();
+			failed |= gestures.checkError();
+		}
+
+		if (failed) {
+			throw new IOException("Could not write the csv files");
+		}
+	}
+
+	private void read(File file) throws IOException {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file), 1 << 16));
+
+		try {
+			boolean valid;
+
+			try {
+				valid = input.readInt() == TelemetrySink.MAGIC
+						&& input.readInt() == TelemetrySink.VERSION;
+			} catch (EOFException e) {
+				valid = false;
+			}
+
+			if (!valid) {
+				throw new IOException("Not a telemetry file: " + file.getPath());
+			}
+
+			// The last record is incomplete if the session was interrupted
+			while (readRecord(input)) {
+				nRecords++;
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	private boolean readRecord(DataInputStream input) throws IOException {
+		int kind;
+		long frameId;
+		long timestamp;
+
+		try {
+			kind = input.readByte();
+			frameId = input.readLong();
+			timestamp = input.readLong();
+
+			for (int i = 0; i < ints.length; i++) {
+				ints[i] = input.readInt();
+			}
+
+			for (int i = 0; i < floats.length; i++) {
+				floats[i] = input.readFloat();
+			}
+		} catch (EOFException e) {
+			return false;
+		}
+
+		PrintWriter writer;
+		int nInts;
+		int nFloats;
+
+		switch (kind) {
+		case TelemetrySink.FRAME:
+			writer = frames;
+			nInts = 4;
+			nFloats = 0;
+			break;
+		case TelemetrySink.HAND:
+			writer = hands;
+			nInts = 2;
+			nFloats = 10;
+			break;
+		case TelemetrySink.GESTURE:
+			writer = gestures;
+			nInts = 4;
+			nFloats = 10;
+			break;
+		default:
+			throw new IOException("Unknown telemetry record kind: " + kind);
+		}
+
+		writer.print(frameId);
+		writer.print(',');
+		writer.print(timestamp);
+
+		for (int i = 0; i < nInts; i++) {
+			writer.print(',');
+			writer.print(ints[i]);
+		}
+
+		for (int i = 0; i < nFloats; i++) {
+			writer.print(',');
+			writer.print(floats[i]);
+		}
+
+		writer.println();
+		return true;
+	}
+}
@@ -0,0 +1,389 @@
+package leaptests;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class TelemetrySink implements Runnable {
+	// File layout: magic number and version, followed by fixed size records
+	// with the kind, the frame id, the frame timestamp, N_INTS ints and
+	// N_FLOATS floats. Big endian
+	public static final int MAGIC = 0x4c544c4d;
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 8;
+	public static final int N_INTS = 4;
+	public static final int N_FLOATS = 10;
+	public static final int RECORD_SIZE = 1 + 8 + 8 + 4 * N_INTS + 4
+			* N_FLOATS;
+
+	// Record kinds
+	public static final int FRAME = 0;
+	public static final int HAND = 1;
+	public static final int GESTURE = 2;
+
+	// Number of records that can wait in the buffer. It has to be a power of
+	// two
+	private static final int BUFFER_SIZE = 1 << 14;
+
+	// The writer thread sleeps this time when the buffer is empty, and
+	// flushes the file every FLUSH_INTERVAL while it's idle
+	private static final long IDLE_WAIT = 1000000;
+	private static final long FLUSH_INTERVAL = 100000000;
+
+	// Single producer, single consumer record buffer. The producer is the
+	// Leap callback thread, and the consumer the writer thread
+	private byte[] kinds;
+	private long[] frameIds;
+	private long[] timestamps;
+	private int[] ints;
+	private float[] floats;
+	private AtomicLong head;
+	private AtomicLong tail;
+	private volatile long droppedRecords;
+	private volatile long writtenRecords;
+
+	private File base;
+	private long maxFileSize;
+	private int maxFiles;
+	private int firstIndex;
+	private int fileIndex;
+	private long fileSize;
+	private DataOutputStream output;
+	private volatile boolean running;
+	private volatile IOException error;
+	private Thread thread;
+
+	public TelemetrySink(File base, long maxFileSize, int maxFiles)
+			throws IOException {
+		this(base, maxFileSize, maxFiles, false);
+	}
+
+	public TelemetrySink(File base, long maxFileSize, int maxFiles,
+			boolean overwrite) throws IOException {
+		// The records are saved in base-000.bin, base-001.bin... starting a
+		// new file when the current one reaches maxFileSize bytes. Only the
+		// last maxFiles files of this session are kept, or all of them if
+		// maxFiles is 0. The files of the previous sessions are kept, and
+		// the numbers continue after them, unless overwrite is true
+		this.base = base;
+		this.maxFileSize = Math.max(maxFileSize, HEADER_SIZE + RECORD_SIZE);
+		this.maxFiles = maxFiles;
+
+		kinds = new byte[BUFFER_SIZE];
+		frameIds = new long[BUFFER_SIZE];
+		timestamps = new long[BUFFER_SIZE];
+		ints = new int[BUFFER_SIZE * N_INTS];
+		floats = new float[BUFFER_SIZE * N_FLOATS];
+		head = new AtomicLong();
+		tail = new AtomicLong();
+		droppedRecords = 0;
+		writtenRecords = 0;
+
+		File[] oldFiles = listFiles(base);
+		firstIndex = 0;
+
+		if (overwrite) {
+			for (int i = 0; i < oldFiles.length; i++) {
+				oldFiles[i].delete();
+			}
+		} else if (oldFiles.length > 0) {
+			firstIndex = getIndex(base, oldFiles[oldFiles.length - 1]) + 1;
+		}
+
+		fileIndex = firstIndex;
+		open();
+		running = false;
+	}
+
+	public static File getFile(File base, int index) {
+		return new File(base.getPath() + "-" + String.format("%03d", index)
+				+ ".bin");
+	}
+
+	private static int getIndex(File base, File file) {
+		String name = file.getName();
+		return Integer.parseInt(name.substring(base.getName().length() + 1,
+				name.length() - 4));
+	}
+
+	public static File[] listFiles(File base) {
+		// Returns the files of a session, oldest first
+		File dir = base.getAbsoluteFile().getParentFile();
+		String prefix = base.getName() + "-";
+		String[] names = dir.list();
+
+		if (names == null) {
+			return new File[0];
+		}
+
+		int[] indices = new int[names.length];
+		int nFiles = 0;
+
+		for (int i = 0; i < names.length; i++) {
+			String name = names[i];
+
+			if (name.startsWith(prefix) && name.endsWith(".bin")) {
+				String number = name.substring(prefix.length(),
+						name.length() - 4);
+
+				if (number.length() > 0 && number.length() < 10
+						&& number.matches("[0-9]+")) {
+					indices[nFiles++] = Integer.parseInt(number);
+				}
+			}
+		}
+
+		Arrays.sort(indices, 0, nFiles);
+		File[] files = new File[nFiles];
+
+		for (int i = 0; i < nFiles; i++) {
+			files[i] = getFile(base, indices[i]);
+		}
+
+		return files;
+	}
+
+	private void open() throws IOException {
+		output = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(getFile(base, fileIndex)), 1 << 16));
+		output.writeInt(MAGIC);
+		output.writeInt(VERSION);
+		fileSize = HEADER_SIZE;
+	}
+
+	private void rotate() throws IOException {
+		output.close();
+		fileIndex++;
+
+		if (maxFiles > 0 && fileIndex - firstIndex >= maxFiles) {
+			getFile(base, fileIndex - maxFiles).delete();
+		}
+
+		open();
+	}
+
+	public void start() {
+		// Write the records in a separate thread, so the Leap callback never
+		// waits for the disk
+		running = true;
+		thread = new Thread(this, "leap-telemetry");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void close() throws IOException {
+		// Writes the records still in the buffer and closes the file. Throws
+		// the first error of the writer thread, if there was one
+		running = false;
+
+		if (thread != null) {
+			LockSupport.unpark(thread);
+
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			thread = null;
+		} else if (error == null) {
+			try {
+				drain();
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+
+		try {
+			output.close();
+		} catch (IOException e) {
+			if (error == null) {
+				error = e;
+			}
+		}
+
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	public void run() {
+		long lastFlush = System.nanoTime();
+
+		try {
+			while (running) {
+				if (drain() > 0) {
+					continue;
+				}
+
+				long time = System.nanoTime();
+
+				if (time - lastFlush > FLUSH_INTERVAL) {
+					output.flush();
+					lastFlush = time;
+				}
+
+				LockSupport.parkNanos(IDLE_WAIT);
+			}
+
+			// Write the records logged before the sink was closed
+			drain();
+		} catch (IOException e) {
+			// Stop writing. The producer drops the records when the buffer
+			// is full
+			error = e;
+		}
+	}
+
+	private int drain() throws IOException {
+		// Writes all the records in the buffer in one batch
+		long first = head.get();
+		long last = tail.get();
+
+		for (long i = first; i < last; i++) {
+			int slot = (int) i & (BUFFER_SIZE - 1);
+
+			if (fileSize + RECORD_SIZE > maxFileSize) {
+				rotate();
+			}
+
+			output.writeByte(kinds[slot]);
+			output.writeLong(frameIds[slot]);
+			output.writeLong(timestamps[slot]);
+
+			for (int j = slot * N_INTS; j < (slot + 1) * N_INTS; j++) {
+				output.writeInt(ints[j]);
+			}
+
+			for (int j = slot * N_FLOATS; j < (slot + 1) * N_FLOATS; j++) {
+				output.writeFloat(floats[j]);
+			}
+
+			fileSize += RECORD_SIZE;
+			head.lazySet(i + 1);
+		}
+
+		writtenRecords += last - first;
+		return (int) (last - first);
+	}
+
+	private int claim(int kind, long frameId, long timestamp) {
+		// Returns the next free slot, or -1 if the writer thread is not
+		// keeping up. The unused values of the slot are set to zero
+		long next = tail.get();
+
+		if (next - head.get() == BUFFER_SIZE) {
+			droppedRecords++;
+			return -1;
+		}
+
+		int slot = (int) next & (BUFFER_SIZE - 1);
+		kinds[slot] = (byte) kind;
+		frameIds[slot] = frameId;
+		timestamps[slot] = timestamp;
+		Arrays.fill(ints, slot * N_INTS, (slot + 1) * N_INTS, 0);
+		Arrays.fill(floats, slot * N_FLOATS, (slot + 1) * N_FLOATS, 0);
+		return slot;
+	}
+
+	private void publish() {
+		tail.lazySet(tail.get() + 1);
+	}
+
+	public void logFrame(long frameId, long timestamp, int nHands,
+			int nFingers, int nTools, int nGestures) {
+		int slot = claim(FRAME, frameId, timestamp);
+
+		if (slot < 0) {
+			return;
+		}
+
+		int i = slot * N_INTS;
+		ints[i] = nHands;
+		ints[i + 1] = nFingers;
+		ints[i + 2] = nTools;
+		ints[i + 3] = nGestures;
+		publish();
+	}
+
+	public void logHand(long frameId, long timestamp, int handId,
+			int nFingers, float sphereRadius, float palmX, float palmY,
+			float palmZ, float tipX, float tipY, float tipZ, float pitch,
+			float roll, float yaw) {
+		// The tip position is the average of the finger tips, and the
+		// angles are in degrees
+		int slot = claim(HAND, frameId, timestamp);
+
+		if (slot < 0) {
+			return;
+		}
+
+		int i = slot * N_INTS;
+		ints[i] = handId;
+		ints[i + 1] = nFingers;
+
+		i = slot * N_FLOATS;
+		floats[i] = sphereRadius;
+		floats[i + 1] = palmX;
+		floats[i + 2] = palmY;
+		floats[i + 3] = palmZ;
+		floats[i + 4] = tipX;
+		floats[i + 5] = tipY;
+		floats[i + 6] = tipZ;
+		floats[i + 7] = pitch;
+		floats[i + 8] = roll;
+		floats[i + 9] = yaw;
+		publish();
+	}
+
+	public void logGesture(long frameId, long timestamp, int gestureId,
+			int type, int state, boolean clockwise, float progress,
+			float radius, float angle, float x, float y, float z,
+			float dirX, float dirY, float dirZ, float speed) {
+		// The type and the state are the ordinals of the Leap enums. The
+		// values that don't apply to the gesture type are zero
+		int slot = claim(GESTURE, frameId, timestamp);
+
+		if (slot < 0) {
+			return;
+		}
+
+		int i = slot * N_INTS;
+		ints[i] = gestureId;
+		ints[i + 1] = type;
+		ints[i + 2] = state;
+		ints[i + 3] = clockwise ? 1 : 0;
+
+		i = slot * N_FLOATS;
+		floats[i] = progress;
+		floats[i + 1] = radius;
+		floats[i + 2] = angle;
+		floats[i + 3] = x;
+		floats[i + 4] = y;
+		floats[i + 5] = z;
+		floats[i + 6] = dirX;
+		floats[i + 7] = dirY;
+		floats[i + 8] = dirZ;
+		floats[i + 9] = speed;
+		publish();
+	}
+
+	public long getDroppedRecords() {
+		return droppedRecords;
+	}
+
+	public long getWrittenRecords() {
+		return writtenRecords;
+	}
+
+	public int getFileCount() {
+		// Files kept from this session
+		int nFiles = fileIndex - firstIndex + 1;
+		return maxFiles > 0 ? Math.min(nFiles, maxFiles) : nFiles;
+	}
+}
@@ -0,0 +1,82 @@
+package leaptests;
+
+public class TrailBuffer {
+	private float[] x;
+	private float[] y;
+	private float[] z;
+	private int head;
+	private int size;
+	private int interval;
+	private int counter;
+
+	public TrailBuffer(int capacity, int interval) {
+		x = new float[capacity];
+		y = new float[capacity];
+		z = new float[capacity];
+		head = 0;
+		size = 0;
+		this.interval = Math.max(1, interval);
+		counter = 0;
+	}
+
+	public boolean sample(float px, float py, float pz) {
+		// Only one every interval points is added to the trail
+		counter++;
+
+		if (counter >= interval) {
+			counter = 0;
+			add(px, py, pz);
+			return true;
+		}
+
+		return false;
+	}
+
+	public void add(float px, float py, float pz) {
+		// Overwrite the oldest point when the buffer is full
+		x[head] = px;
+		y[head] = py;
+		z[head] = pz;
+		head = (head + 1) % x.length;
+
+		if (size < x.length) {
+			size++;
+		}
+	}
+
+	public void clear() {
+		head = 0;
+		size = 0;
+		counter = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getCapacity() {
+		return x.length;
+	}
+
+	public int getInterval() {
+		return interval;
+	}
+
+	// The points are indexed from the oldest (0) to the newest (size - 1)
+	private int slot(int i) {
+		int index = head - size + i;
+		return index < 0 ? index + x.length : index;
+	}
+
+	public float getX(int i) {
+		return x[slot(i)];
+	}
+
+	public float getY(int i) {
+		return y[slot(i)];
+	}
+
+	public float getZ(int i) {
+		return z[slot(i)];
+	}
+}
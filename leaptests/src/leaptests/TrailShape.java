@@ -0,0 +1,89 @@
+package leaptests;
+
+import processing.core.PApplet;
+import processing.core.PConstants;
+import processing.core.PShape;
+
+public class TrailShape implements PConstants {
+	// The newest segments are not drawn, to keep them away from the star
+	private static final int HIDDEN_SEGMENTS = 4;
+
+	private PShape shape;
+	private int capacity;
+	private int color;
+	private long nPoints;
+
+	public TrailShape(PApplet parent, int capacity, int color, float weight) {
+		this.capacity = capacity;
+		this.color = color;
+		nPoints = 0;
+
+		// Every trail segment has its own slot with two vertices, so it can
+		// be replaced without touching the rest of the shape. The unused
+		// slots are transparent
+		shape = parent.createShape();
+		shape.beginShape(LINES);
+		shape.noFill();
+		shape.stroke(0, 0);
+		shape.strokeWeight(weight);
+
+		for (int i = 0; i < 2 * capacity; i++) {
+			shape.vertex(0, 0, 0);
+		}
+
+		shape.endShape();
+	}
+
+	public void append(TrailBuffer trail) {
+		// Update the shape after a point has been added to the trail
+		nPoints++;
+		int size = trail.size();
+
+		// Hide the segment that starts at the point that was overwritten
+		if (nPoints > capacity) {
+			setSegment((int) (nPoints % capacity), 0, 0, 0, 0, 0, 0, 0);
+		}
+
+		// Show the segment that is now old enough to be drawn
+		if (size > HIDDEN_SEGMENTS) {
+			int end = size - HIDDEN_SEGMENTS;
+			setSegment((int) ((nPoints - HIDDEN_SEGMENTS) % capacity),
+					trail.getX(end - 1), trail.getY(end - 1),
+					trail.getZ(end - 1), trail.getX(end), trail.getY(end),
+					trail.getZ(end), color);
+		}
+	}
+
+	private void setSegment(int slot, float x1, float y1, float z1, float x2,
+			float y2, float z2, int segmentColor) {
+		shape.setVertex(2 * slot, x1, y1, z1);
+		shape.setVertex(2 * slot + 1, x2, y2, z2);
+		shape.setStroke(2 * slot, segmentColor);
+		shape.setStroke(2 * slot + 1, segmentColor);
+	}
+
+	public void set(TrailBuffer trail) {
+		// Show all the points already in the trail, as if they had been
+		// appended one by one to an empty trail
+		clear();
+		nPoints = trail.size();
+
+		for (int end = 1; end <= trail.size() - HIDDEN_SEGMENTS; end++) {
+			setSegment(end % capacity, trail.getX(end - 1),
+					trail.getY(end - 1), trail.getZ(end - 1), trail.getX(end),
+					trail.getY(end), trail.getZ(end), color);
+		}
+	}
+
+	public void clear() {
+		for (int i = 0; i < capacity; i++) {
+			setSegment(i, 0, 0, 0, 0, 0, 0, 0);
+		}
+
+		nPoints = 0;
+	}
+
+	public void draw(PApplet parent) {
+		parent.shape(shape);
+	}
+}
@@ -0,0 +1,10 @@
+package leaptests;
+
+public interface View {
+	// Orientation and zoom of the scene around the black hole
+	float getXAng();
+
+	float getYAng();
+
+	float getZoom();
+}
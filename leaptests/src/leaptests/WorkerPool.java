@@ -0,0 +1,126 @@
+package leaptests;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+public class WorkerPool {
+	// Ranges smaller than this are not worth sending to another thread
+	private static final int MIN_RANGE_SIZE = 8;
+
+	public interface RangeTask {
+		void run(int from, int to);
+	}
+
+	private int nThreads;
+	private ExecutorService executor;
+
+	public WorkerPool(int nThreads) {
+		this.nThreads = Math.max(1, nThreads);
+
+		// The calling thread runs one of the ranges, so it only needs
+		// nThreads - 1 workers to keep nThreads threads busy
+		if (this.nThreads > 1) {
+			// Use daemon threads, so the pool never keeps the applet alive
+			executor = Executors.newFixedThreadPool(this.nThreads - 1,
+					new ThreadFactory() {
+						private int counter = 0;
+
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable, "worker-"
+									+ counter++);
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+	}
+
+	public void run(int n, final RangeTask task) {
+		int nRanges = Math.min(nThreads, (n + MIN_RANGE_SIZE - 1)
+				/ MIN_RANGE_SIZE);
+
+		if (nRanges <= 1) {
+			task.run(0, n);
+			return;
+		}
+
+		// Send all the ranges except the first one to the workers, and run
+		// the first one in the calling thread. The futures are local, so
+		// several threads can share the pool
+		Future<?>[] futures = new Future<?>[nRanges];
+
+		for (int i = 1; i < nRanges; i++) {
+			final int from = (int) ((long) n * i / nRanges);
+			final int to = (int) ((long) n * (i + 1) / nRanges);
+
+			futures[i] = executor.submit(new Runnable() {
+				public void run() {
+					task.run(from, to);
+				}
+			});
+		}
+
+		boolean finished = false;
+
+		try {
+			task.run(0, n / nRanges);
+			finished = true;
+		} finally {
+			// Wait for all the workers even if the first range failed, so no
+			// range is still running when this method returns. A failure in
+			// the calling thread takes precedence over the workers' ones
+			RuntimeException failure = waitFor(futures);
+
+			if (finished && failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	private static RuntimeException waitFor(Future<?>[] futures) {
+		// Returns the first failure, after all the futures have finished
+		RuntimeException failure = null;
+		boolean interrupted = false;
+
+		for (int i = 1; i < futures.length; i++) {
+			while (true) {
+				try {
+					futures[i].get();
+					break;
+				} catch (InterruptedException e) {
+					// Keep waiting, the ranges must finish before returning
+					interrupted = true;
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+
+					if (failure == null && cause instanceof RuntimeException) {
+						failure = (RuntimeException) cause;
+					} else if (failure == null) {
+						failure = new RuntimeException(cause);
+					}
+
+					break;
+				}
+			}
+		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		return failure;
+	}
+
+	public int getThreadCount() {
+		return nThreads;
+	}
+
+	public void shutdown() {
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+}
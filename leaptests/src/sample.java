@@ -6,12 +6,20 @@
 * between Leap Motion and you, your company or other organization.             *
 \******************************************************************************/
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.Math;
 import com.leapmotion.leap.*;
 import com.leapmotion.leap.Gesture.State;
+import leaptests.TelemetrySink;
 
 class SampleListener extends Listener {
+    private TelemetrySink telemetry;
+
+    public SampleListener(TelemetrySink telemetry) {
+        this.telemetry = telemetry;
+    }
+
     public void onInit(Controller controller) {
         System.out.println("Initialized");
     }
@@ -36,62 +44,66 @@ class SampleListener extends Listener {
     }
 
     public void onFrame(Controller controller) {
-        // Get the most recent frame and report some basic information
+        // Log the most recent frame. The records are written to disk in the
+        // telemetry thread, so this callback never waits for the console or
+        // the file
         Frame frame = controller.frame();
-        System.out.println("Frame id: " + frame.id()
-                         + ", timestamp: " + frame.timestamp()
-                         + ", hands: " + frame.hands().count()
-                         + ", fingers: " + frame.fingers().count()
-                         + ", tools: " + frame.tools().count()
-                         + ", gestures " + frame.gestures().count());
-
-        if (!frame.hands().empty()) {
+        long frameId = frame.id();
+        long timestamp = frame.timestamp();
+        HandList hands = frame.hands();
+        GestureList gestures = frame.gestures();
+        telemetry.logFrame(frameId, timestamp, hands.count(),
+                           frame.fingers().count(), frame.tools().count(),
+                           gestures.count());
+
+        if (!hands.empty()) {
             // Get the first hand
-            Hand hand = frame.hands().get(0);
+            Hand hand = hands.get(0);
 
-            // Check if the hand has any fingers
+            // Calculate the hand's average finger tip position
             FingerList fingers = hand.fingers();
-            if (!fingers.empty()) {
-                // Calculate the hand's average finger tip position
-                Vector avgPos = Vector.zero();
-                for (Finger finger : fingers) {
-                    avgPos = avgPos.plus(finger.tipPosition());
-                }
-                avgPos = avgPos.divide(fingers.count());
-                System.out.println("Hand has " + fingers.count()
-                                 + " fingers, average finger tip position: " + avgPos);
+            int fingerCount = fingers.count();
+            float tipX = 0;
+            float tipY = 0;
+            float tipZ = 0;
+            for (int i = 0; i < fingerCount; i++) {
+                Vector tip = fingers.get(i).tipPosition();
+                tipX += tip.getX();
+                tipY += tip.getY();
+                tipZ += tip.getZ();
+            }
+            if (fingerCount > 0) {
+                tipX /= fingerCount;
+                tipY /= fingerCount;
+                tipZ /= fingerCount;
             }
 
-            // Get the hand's sphere radius and palm position
-            System.out.println("Hand sphere radius: " + hand.sphereRadius()
-                             + " mm, palm position: " + hand.palmPosition());
-
-            // Get the hand's normal vector and direction
+            // Get the hand's palm position, normal vector and direction, and
+            // calculate the hand's pitch, roll, and yaw angles
+            Vector palm = hand.palmPosition();
             Vector normal = hand.palmNormal();
             Vector direction = hand.direction();
-
-            // Calculate the hand's pitch, roll, and yaw angles
-            System.out.println("Hand pitch: " + Math.toDegrees(direction.pitch()) + " degrees, "
-                             + "roll: " + Math.toDegrees(normal.roll()) + " degrees, "
-                             + "yaw: " + Math.toDegrees(direction.yaw()) + " degrees");
+            telemetry.logHand(frameId, timestamp, hand.id(), fingerCount,
+                              hand.sphereRadius(),
+                              palm.getX(), palm.getY(), palm.getZ(),
+                              tipX, tipY, tipZ,
+                              (float) Math.toDegrees(direction.pitch()),
+                              (float) Math.toDegrees(normal.roll()),
+                              (float) Math.toDegrees(direction.yaw()));
         }
 
-        GestureList gestures = frame.gestures();
         for (int i = 0; i < gestures.count(); i++) {
             Gesture gesture = gestures.get(i);
+            int type = gesture.type().ordinal();
+            int state = gesture.state().ordinal();
 
             switch (gesture.type()) {
                 case TYPE_CIRCLE:
                     CircleGesture circle = new CircleGesture(gesture);
 
                     // Calculate clock direction using the angle between circle normal and pointable
-                    String clockwiseness;
-                    if (circle.pointable().direction().angleTo(circle.normal()) <= Math.PI/4) {
-                        // Clockwise if angle is less than 90 degrees
-                        clockwiseness = "clockwise";
-                    } else {
-                        clockwiseness = "counterclockwise";
-                    }
+                    // Clockwise if angle is less than 90 degrees
+                    boolean clockwise = circle.pointable().direction().angleTo(circle.normal()) <= Math.PI/4;
 
                     // Calculate angle swept since last frame
                     double sweptAngle = 0;
@@ -100,51 +112,66 @@ class SampleListener extends Listener {
                         sweptAngle = (circle.progress() - previousUpdate.progress()) * 2 * Math.PI;
                     }
 
-                    System.out.println("Circle id: " + circle.id()
-                               + ", " + circle.state()
-                               + ", progress: " + circle.progress()
-                               + ", radius: " + circle.radius()
-                               + ", angle: " + Math.toDegrees(sweptAngle)
-                               + ", " + clockwiseness);
+                    Vector center = circle.center();
+                    Vector circleNormal = circle.normal();
+                    telemetry.logGesture(frameId, timestamp, circle.id(), type, state,
+                                         clockwise, circle.progress(), circle.radius(),
+                                         (float) Math.toDegrees(sweptAngle),
+                                         center.getX(), center.getY(), center.getZ(),
+                                         circleNormal.getX(), circleNormal.getY(), circleNormal.getZ(),
+                                         0);
                     break;
                 case TYPE_SWIPE:
                     SwipeGesture swipe = new SwipeGesture(gesture);
-                    System.out.println("Swipe id: " + swipe.id()
-                               + ", " + swipe.state()
-                               + ", position: " + swipe.position()
-                               + ", direction: " + swipe.direction()
-                               + ", speed: " + swipe.speed());
+                    logMotion(frameId, timestamp, swipe.id(), type, state,
+                              swipe.position(), swipe.direction(), swipe.speed());
                     break;
                 case TYPE_SCREEN_TAP:
                     ScreenTapGesture screenTap = new ScreenTapGesture(gesture);
-                    System.out.println("Screen Tap id: " + screenTap.id()
-                               + ", " + screenTap.state()
-                               + ", position: " + screenTap.position()
-                               + ", direction: " + screenTap.direction());
+                    logMotion(frameId, timestamp, screenTap.id(), type, state,
+                              screenTap.position(), screenTap.direction(), 0);
                     break;
                 case TYPE_KEY_TAP:
                     KeyTapGesture keyTap = new KeyTapGesture(gesture);
-                    System.out.println("Key Tap id: " + keyTap.id()
-                               + ", " + keyTap.state()
-                               + ", position: " + keyTap.position()
-                               + ", direction: " + keyTap.direction());
+                    logMotion(frameId, timestamp, keyTap.id(), type, state,
+                              keyTap.position(), keyTap.direction(), 0);
                     break;
                 default:
-                    System.out.println("Unknown gesture type.");
+                    telemetry.logGesture(frameId, timestamp, gesture.id(), type, state,
+                                         false, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
                     break;
             }
         }
+    }
 
-        if (!frame.hands().empty() || !gestures.empty()) {
-            System.out.println();
-        }
+    private void logMotion(long frameId, long timestamp, int id, int type,
+                           int state, Vector position, Vector direction,
+                           float speed) {
+        telemetry.logGesture(frameId, timestamp, id, type, state, false, 0, 0, 0,
+                             position.getX(), position.getY(), position.getZ(),
+                             direction.getX(), direction.getY(), direction.getZ(),
+                             speed);
     }
 }
 
 class Sample {
     public static void main(String[] args) {
+        // Log the frames in telemetry-000.bin, telemetry-001.bin... or in
+        // the files named after the first argument, starting a new file
+        // every 64 MB
+        File base = new File(args.length > 0 ? args[0] : "telemetry");
+        TelemetrySink telemetry;
+        try {
+            telemetry = new TelemetrySink(base, 64 << 20, 0);
+        } catch (IOException e) {
+            System.err.println("Could not create the telemetry file: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        telemetry.start();
+
         // Create a sample listener and controller
-        SampleListener listener = new SampleListener();
+        SampleListener listener = new SampleListener(telemetry);
         Controller controller = new Controller();
 
         // Have the sample listener receive events from the controller
@@ -160,5 +187,17 @@ class Sample {
 
         // Remove the sample listener when done
         controller.removeListener(listener);
+
+        // Write the remaining records
+        try {
+            telemetry.close();
+        } catch (IOException e) {
+            System.err.println("Could not write the telemetry: " + e.getMessage());
+        }
+        System.out.println("Logged " + telemetry.getWrittenRecords() + " records in "
+                         + telemetry.getFileCount() + " files, dropped "
+                         + telemetry.getDroppedRecords());
+        System.out.println("Convert them to csv with: java leaptests.TelemetryExporter "
+                         + base.getPath());
     }
 }
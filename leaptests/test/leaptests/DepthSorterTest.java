@@ -0,0 +1,85 @@
+package leaptests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class DepthSorterTest {
+	private static void assertSorted(float[] zValues, int[] order, int count) {
+		// The order must be a permutation of the indices, from back to front
+		boolean[] seen = new boolean[count];
+
+		for (int i = 0; i < count; i++) {
+			assertFalse(seen[order[i]]);
+			seen[order[i]] = true;
+
+			if (i > 0) {
+				assertTrue(zValues[order[i - 1]] <= zValues[order[i]]);
+			}
+		}
+	}
+
+	private static float[] randomKeys(Random random, int count) {
+		float[] zValues = new float[count];
+
+		for (int i = 0; i < count; i++) {
+			zValues[i] = 2000 * random.nextFloat() - 1000;
+		}
+
+		return zValues;
+	}
+
+	@Test
+	public void sortsSmallChanges() {
+		// Each frame only moves the stars a little, so the insertion sort
+		// does all the work
+		Random random = new Random(1);
+		float[] zValues = randomKeys(random, 500);
+		DepthSorter sorter = new DepthSorter();
+		assertSorted(zValues, sorter.sort(zValues, zValues.length),
+				zValues.length);
+
+		for (int frame = 0; frame < 20; frame++) {
+			for (int i = 0; i < zValues.length; i++) {
+				zValues[i] += random.nextFloat() - 0.5f;
+			}
+
+			assertSorted(zValues, sorter.sort(zValues, zValues.length),
+					zValues.length);
+		}
+	}
+
+	@Test
+	public void sortsNewOrders() {
+		// Too many shifts make the sorter start again from scratch
+		Random random = new Random(2);
+		DepthSorter sorter = new DepthSorter();
+
+		for (int frame = 0; frame < 5; frame++) {
+			float[] zValues = randomKeys(random, 1000);
+			assertSorted(zValues, sorter.sort(zValues, zValues.length),
+					zValues.length);
+		}
+	}
+
+	@Test
+	public void sortsNegativeAndRepeatedKeys() {
+		float[] zValues = { 3, -0.5f, 0, -7, 3, -0.5f, 1e-20f, -1e-20f, 0 };
+		int[] order = new DepthSorter().sort(zValues, zValues.length);
+		assertSorted(zValues, order, zValues.length);
+	}
+
+	@Test
+	public void followsTheCount() {
+		float[] zValues = { 5, 4, 3, 2, 1, 0 };
+		DepthSorter sorter = new DepthSorter();
+		assertSorted(zValues, sorter.sort(zValues, 6), 6);
+
+		int[] order = sorter.sort(zValues, 3);
+		assertArrayEquals(new int[] { 2, 1, 0 }, new int[] { order[0],
+				order[1], order[2] });
+	}
+}
@@ -0,0 +1,54 @@
+package leaptests;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import processing.core.PVector;
+
+public class KeplerIntegratorTest {
+	// Units with G * M = 1. The star is bound, with a period of about 15
+	private static final float MASS = 1;
+	private static final PVector POS = new PVector(1, 0, 0.2f);
+	private static final PVector VEL = new PVector(0.1f, 1.2f, 0.1f);
+
+	private static OrbitEngine createEngine(Integrator integrator) {
+		OrbitEngine orbits = new OrbitEngine(1, MASS);
+		orbits.setIntegrator(integrator);
+		orbits.addStar(POS, VEL);
+		return orbits;
+	}
+
+	private static void assertSameState(OrbitEngine expected,
+			OrbitEngine actual, double tolerance) {
+		assertEquals(expected.x[0], actual.x[0], tolerance);
+		assertEquals(expected.y[0], actual.y[0], tolerance);
+		assertEquals(expected.z[0], actual.z[0], tolerance);
+		assertEquals(expected.vx[0], actual.vx[0], tolerance);
+		assertEquals(expected.vy[0], actual.vy[0], tolerance);
+		assertEquals(expected.vz[0], actual.vz[0], tolerance);
+	}
+
+	@Test
+	public void matchesNumericalIntegration() {
+		// Small Yoshida steps are accurate enough to be the reference
+		OrbitEngine numerical = createEngine(SymplecticIntegrator.yoshida());
+		OrbitEngine analytic = createEngine(new KeplerIntegrator(1));
+
+		for (int frame = 0; frame < 40; frame++) {
+			numerical.update(0.001f, 500);
+			analytic.update(0.001f, 500);
+			assertSameState(numerical, analytic, 1e-6);
+		}
+	}
+
+	@Test
+	public void seeksBackToTheStart() {
+		OrbitEngine orbits = createEngine(new KeplerIntegrator(1));
+		OrbitEngine start = createEngine(SymplecticIntegrator.verlet());
+		orbits.update(0.01f, 1234);
+		orbits.seek(0);
+
+		assertEquals(0, orbits.getTime(), 0);
+		assertSameState(start, orbits, 1e-9);
+	}
+}
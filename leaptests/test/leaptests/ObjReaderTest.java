@@ -0,0 +1,115 @@
+package leaptests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import org.junit.Test;
+
+public class ObjReaderTest {
+	private static final int RED = 0xffff0000;
+	private static final int BLUE = 0xff0000ff;
+
+	// Enough vertices to split the file in several chunks, so the faces and
+	// the materials they use are in different chunks
+	private static final int N_VERTICES = 30000;
+
+	private static void addVertices(StringBuilder obj, int from, int to) {
+		for (int i = from; i < to; i++) {
+			obj.append("v ").append(i).append(' ').append(i).append(".5 -")
+					.append(i).append(".25\n");
+		}
+	}
+
+	private static byte[] createObj() throws IOException {
+		StringBuilder obj = new StringBuilder();
+		obj.append("# Test file\n");
+		obj.append("mtllib test.mtl\n");
+		obj.append("vn 0 0 1\n");
+		obj.append("usemtl red\n");
+		addVertices(obj, 0, N_VERTICES / 3);
+		obj.append("f 1//1 2//1 3//1\n");
+		addVertices(obj, N_VERTICES / 3, 2 * N_VERTICES / 3);
+		obj.append("usemtl blue\n");
+		obj.append("f -1 -2 -3 -4\n");
+		addVertices(obj, 2 * N_VERTICES / 3, N_VERTICES);
+		obj.append("f 5 6 7\n");
+
+		byte[] bytes = obj.toString().getBytes("UTF-8");
+		assertTrue(bytes.length > 8 * (1 << 16));
+		return bytes;
+	}
+
+	private static ObjReader read(byte[] obj, WorkerPool workers)
+			throws IOException {
+		return ObjReader.read(new ByteArrayInputStream(obj), workers);
+	}
+
+	@Test
+	public void readsAllTheChunks() throws IOException {
+		ObjReader reader = read(createObj(), null);
+		float[] vertices = reader.getVertices();
+
+		assertEquals(N_VERTICES, reader.getVertexCount());
+		assertEquals(4, reader.getTriangleCount());
+		assertTrue(reader.hasNormals());
+		assertArrayEquals(new String[] { "test.mtl" }, reader.getLibraries());
+
+		for (int i = 0; i < N_VERTICES; i++) {
+			assertEquals(i, vertices[3 * i], 0);
+			assertEquals(i + 0.5f, vertices[3 * i + 1], 0);
+			assertEquals(-i - 0.25f, vertices[3 * i + 2], 0);
+		}
+
+		// The quad is split in a triangle fan, with indices relative to the
+		// last vertex read
+		int last = 2 * N_VERTICES / 3 - 1;
+		assertArrayEquals(new int[] { 0, 1, 2, last, last - 1, last - 2,
+				last, last - 2, last - 3, 4, 5, 6 }, reader.getIndices());
+	}
+
+	@Test
+	public void carriesTheMaterialsBetweenChunks() throws IOException {
+		HashMap<String, Integer> colors = new HashMap<String, Integer>();
+		colors.put("red", RED);
+		colors.put("blue", BLUE);
+		Mesh mesh = read(createObj(), null).toMesh(colors);
+		IntBuffer meshColors = mesh.getColors();
+		int[] expected = { RED, BLUE, BLUE, BLUE };
+
+		for (int t = 0; t < expected.length; t++) {
+			for (int k = 3 * t; k < 3 * t + 3; k++) {
+				assertEquals(expected[t], meshColors.get(k));
+			}
+		}
+
+		// Only the first face has the file normals
+		FloatBuffer normals = mesh.getNormals();
+
+		for (int k = 0; k < 3; k++) {
+			assertEquals(0, normals.get(3 * k), 0);
+			assertEquals(0, normals.get(3 * k + 1), 0);
+			assertEquals(1, normals.get(3 * k + 2), 0);
+		}
+	}
+
+	@Test
+	public void parsesTheSameInParallel() throws IOException {
+		byte[] obj = createObj();
+		ObjReader serial = read(obj, null);
+		WorkerPool workers = new WorkerPool(4);
+
+		try {
+			ObjReader parallel = read(obj, workers);
+			assertArrayEquals(serial.getVertices(), parallel.getVertices(), 0);
+			assertArrayEquals(serial.getIndices(), parallel.getIndices());
+		} finally {
+			workers.shutdown();
+		}
+	}
+}
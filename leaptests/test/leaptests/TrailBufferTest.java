@@ -0,0 +1,88 @@
+package leaptests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TrailBufferTest {
+	private static void assertPoints(TrailBuffer trail, int first, int last) {
+		// The points added with addPoint, from first to last
+		assertEquals(last - first + 1, trail.size());
+
+		for (int i = 0; i < trail.size(); i++) {
+			assertEquals(first + i, trail.getX(i), 0);
+			assertEquals(10 * (first + i), trail.getY(i), 0);
+			assertEquals(100 * (first + i), trail.getZ(i), 0);
+		}
+	}
+
+	private static void addPoint(TrailBuffer trail, int n) {
+		trail.add(n, 10 * n, 100 * n);
+	}
+
+	@Test
+	public void keepsThePointsBeforeFilling() {
+		TrailBuffer trail = new TrailBuffer(4, 1);
+		addPoint(trail, 0);
+		addPoint(trail, 1);
+		addPoint(trail, 2);
+
+		assertPoints(trail, 0, 2);
+	}
+
+	@Test
+	public void overwritesTheOldestPointsWhenFull() {
+		TrailBuffer trail = new TrailBuffer(4, 1);
+
+		for (int n = 0; n < 4; n++) {
+			addPoint(trail, n);
+		}
+
+		assertPoints(trail, 0, 3);
+
+		// Go around the buffer more than once
+		for (int n = 4; n < 11; n++) {
+			addPoint(trail, n);
+			assertPoints(trail, n - 3, n);
+		}
+
+		assertEquals(4, trail.getCapacity());
+	}
+
+	@Test
+	public void samplesOneEveryIntervalPoints() {
+		TrailBuffer trail = new TrailBuffer(4, 3);
+		int added = 0;
+
+		for (int n = 0; n < 9; n++) {
+			if (trail.sample(n, 10 * n, 100 * n)) {
+				assertEquals(2, n % 3);
+				added++;
+			} else {
+				assertFalse(n % 3 == 2);
+			}
+		}
+
+		assertEquals(3, added);
+		assertEquals(8, trail.getX(2), 0);
+	}
+
+	@Test
+	public void startsOverAfterClear() {
+		TrailBuffer trail = new TrailBuffer(4, 1);
+
+		for (int n = 0; n < 6; n++) {
+			addPoint(trail, n);
+		}
+
+		trail.clear();
+		assertEquals(0, trail.size());
+
+		addPoint(trail, 7);
+		addPoint(trail, 8);
+		assertPoints(trail, 7, 8);
+		assertTrue(trail.size() < trail.getCapacity());
+	}
+}